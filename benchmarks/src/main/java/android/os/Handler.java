@@ -0,0 +1,62 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package android.os;
+
+/**
+ * A minimal stand-in for Android's Handler which posts callbacks to a fake {@link Looper}.
+ * 
+ * @author Lorenzo Villani
+ */
+public class Handler
+{
+        private final Looper mLooper;
+
+        public Handler ()
+        {
+                this ( Looper.myLooper () );
+        }
+
+        public Handler ( Looper looper )
+        {
+                if ( looper == null )
+                {
+                        throw new RuntimeException ( "Can't create handler inside thread that has not called Looper.prepare()" );
+                }
+
+                mLooper = looper;
+        }
+
+        public final Looper getLooper ()
+        {
+                return mLooper;
+        }
+
+        public final boolean post ( Runnable r )
+        {
+                return mLooper.enqueue ( this, r, SystemClock.uptimeMillis () );
+        }
+
+        public final boolean postDelayed ( Runnable r, long delayMillis )
+        {
+                return mLooper.enqueue ( this, r, SystemClock.uptimeMillis () + Math.max ( 0, delayMillis ) );
+        }
+
+        public final void removeCallbacks ( Runnable r )
+        {
+                mLooper.remove ( this, r );
+        }
+}
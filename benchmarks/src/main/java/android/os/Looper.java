@@ -0,0 +1,249 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package android.os;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * A minimal message loop standing in for Android's Looper on a plain JVM.
+ * <p>
+ * Only the subset of the framework API used by the library is implemented. Messages are ordered by due time, then by
+ * posting order, just like the real message queue.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ */
+public final class Looper
+{
+        private static final ThreadLocal < Looper > sThreadLocal = new ThreadLocal < Looper > ();
+        private static volatile Looper sMainLooper;
+
+        private final PriorityQueue < Message > mQueue;
+        private boolean mQuitting;
+        private long mSequence;
+        private final Thread mThread;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * A pending callback.
+         */
+        private static final class Message implements Comparable < Message >
+        {
+                private final Runnable mCallback;
+                private final Handler mTarget;
+                private final long mSequence;
+                private final long mWhen;
+
+                public Message ( Handler target, Runnable callback, long when, long sequence )
+                {
+                        mCallback = callback;
+                        mSequence = sequence;
+                        mTarget = target;
+                        mWhen = when;
+                }
+
+                @Override
+                public int compareTo ( Message other )
+                {
+                        if ( mWhen != other.mWhen )
+                        {
+                                return mWhen < other.mWhen ? -1 : 1;
+                        }
+
+                        return mSequence < other.mSequence ? -1 : ( mSequence == other.mSequence ? 0 : 1 );
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        private Looper ()
+        {
+                mQueue = new PriorityQueue < Message > ();
+                mThread = Thread.currentThread ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        public static Looper getMainLooper ()
+        {
+                return sMainLooper;
+        }
+
+        public Thread getThread ()
+        {
+                return mThread;
+        }
+
+        /**
+         * Processes messages until {@link #quit()} is called. Exceptions thrown by callbacks propagate, as on Android.
+         */
+        public static void loop ()
+        {
+                Looper looper;
+                Message message;
+
+                looper = myLooper ();
+
+                if ( looper == null )
+                {
+                        throw new RuntimeException ( "No Looper; Looper.prepare() wasn't called on this thread." );
+                }
+
+                while ( true )
+                {
+                        message = looper.next ();
+
+                        if ( message == null )
+                        {
+                                return;
+                        }
+
+                        message.mCallback.run ();
+                }
+        }
+
+        public static Looper myLooper ()
+        {
+                return sThreadLocal.get ();
+        }
+
+        public static void prepare ()
+        {
+                if ( sThreadLocal.get () != null )
+                {
+                        throw new RuntimeException ( "Only one Looper may be created per thread" );
+                }
+
+                sThreadLocal.set ( new Looper () );
+        }
+
+        public static void prepareMainLooper ()
+        {
+                prepare ();
+
+                sMainLooper = myLooper ();
+        }
+
+        public void quit ()
+        {
+                synchronized ( mQueue )
+                {
+                        mQuitting = true;
+                        mQueue.notifyAll ();
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Package Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        boolean enqueue ( Handler target, Runnable callback, long when )
+        {
+                synchronized ( mQueue )
+                {
+                        if ( mQuitting )
+                        {
+                                return false;
+                        }
+
+                        mQueue.add ( new Message ( target, callback, when, mSequence++ ) );
+                        mQueue.notifyAll ();
+                }
+
+                return true;
+        }
+
+        void remove ( Handler target, Runnable callback )
+        {
+                Iterator < Message > iterator;
+                Message message;
+
+                synchronized ( mQueue )
+                {
+                        iterator = mQueue.iterator ();
+
+                        while ( iterator.hasNext () )
+                        {
+                                message = iterator.next ();
+
+                                if ( message.mTarget == target && message.mCallback == callback )
+                                {
+                                        iterator.remove ();
+                                }
+                        }
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        private Message next ()
+        {
+                Message message;
+                long delay;
+
+                synchronized ( mQueue )
+                {
+                        while ( true )
+                        {
+                                if ( mQuitting )
+                                {
+                                        return null;
+                                }
+
+                                message = mQueue.peek ();
+
+                                if ( message == null )
+                                {
+                                        waitUninterruptibly ( 0 );
+
+                                        continue;
+                                }
+
+                                delay = message.mWhen - SystemClock.uptimeMillis ();
+
+                                if ( delay <= 0 )
+                                {
+                                        return mQueue.poll ();
+                                }
+
+                                waitUninterruptibly ( delay );
+                        }
+                }
+        }
+
+        private void waitUninterruptibly ( long millis )
+        {
+                try
+                {
+                        mQueue.wait ( millis );
+                }
+                catch ( InterruptedException ex )
+                {
+                        Thread.currentThread ().interrupt ();
+                }
+        }
+}
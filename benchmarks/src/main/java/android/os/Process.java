@@ -0,0 +1,32 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package android.os;
+
+/**
+ * A stand-in for Android's Process. Thread priorities are left to the JVM.
+ * 
+ * @author Lorenzo Villani
+ */
+public class Process
+{
+        public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+        public static final void setThreadPriority ( int priority )
+        {
+                // Nothing to do on a plain JVM
+        }
+}
@@ -0,0 +1,35 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package android.os;
+
+/**
+ * A stand-in for Android's SystemClock, backed by {@link System#nanoTime()}.
+ * 
+ * @author Lorenzo Villani
+ */
+public final class SystemClock
+{
+        public static long elapsedRealtime ()
+        {
+                return uptimeMillis ();
+        }
+
+        public static long uptimeMillis ()
+        {
+                return System.nanoTime () / 1000000;
+        }
+}
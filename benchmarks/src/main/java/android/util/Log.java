@@ -0,0 +1,47 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package android.util;
+
+/**
+ * A stand-in for Android's Log which writes to standard error.
+ * 
+ * @author Lorenzo Villani
+ */
+public final class Log
+{
+        public static int e ( String tag, String msg, Throwable tr )
+        {
+                return println ( "E", tag, msg, tr );
+        }
+
+        public static int w ( String tag, String msg, Throwable tr )
+        {
+                return println ( "W", tag, msg, tr );
+        }
+
+        private static int println ( String level, String tag, String msg, Throwable tr )
+        {
+                System.err.println ( level + "/" + tag + ": " + msg );
+
+                if ( tr != null )
+                {
+                        tr.printStackTrace ();
+                }
+
+                return 0;
+        }
+}
@@ -0,0 +1,126 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.benchmark;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.bitcode.android.benchmark.UiThread.EmptyTask;
+import co.bitcode.android.os.PriorityExecutor;
+
+/**
+ * Measures the round trip of a single empty task, from submission on the caller thread to delivery of the result on
+ * the fake UI thread.
+ * <p>
+ * {@link #baseline()} hands a bare runnable to the same executor, the difference is the overhead added by
+ * {@link co.bitcode.android.os.AsyncTask}. Run with <code>-prof gc</code> to get the amount of memory allocated per
+ * task.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ */
+@BenchmarkMode ( { Mode.AverageTime, Mode.SampleTime } )
+@Fork ( 1 )
+@Measurement ( iterations = 5, time = 2 )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@State ( Scope.Benchmark )
+@Warmup ( iterations = 3, time = 2 )
+public class DispatchLatencyBenchmark
+{
+        private PriorityExecutor mExecutor;
+
+        @Setup
+        public void setUp ()
+        {
+                mExecutor = new PriorityExecutor ( "Benchmark", 1 );
+        }
+
+        @TearDown
+        public void tearDown ()
+        {
+                mExecutor.shutdownNow ();
+        }
+
+        /**
+         * A bare runnable through the executor, without any UI thread hop.
+         */
+        @Benchmark
+        public void baseline () throws InterruptedException, ExecutionException
+        {
+                FutureTask < Void > future;
+
+                future = new FutureTask < Void > ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                // Nothing to do
+                        }
+                }, null );
+
+                mExecutor.execute ( future );
+
+                future.get ();
+        }
+
+        /**
+         * {@link co.bitcode.android.os.AsyncTask#execute(Object...)}: one post to start the task, one to deliver the
+         * fused finish/finalize callback.
+         */
+        @Benchmark
+        public void execute ( UiThread uiThread ) throws InterruptedException
+        {
+                EmptyTask task;
+
+                task = new EmptyTask ( uiThread );
+                task.setExecutor ( mExecutor );
+                task.execute ();
+
+                uiThread.awaitFinished ( 1 );
+        }
+
+        /**
+         * {@link co.bitcode.android.os.AsyncTask#getFutureTask(Object...)}: the worker thread blocks on a latch while
+         * the UI thread runs the start and completion callbacks.
+         */
+        @Benchmark
+        public void latchHandshake ( UiThread uiThread ) throws InterruptedException, ExecutionException
+        {
+                FutureTask < Void > future;
+
+                future = new EmptyTask ( uiThread ).getFutureTask ();
+
+                mExecutor.execute ( future );
+
+                future.get ();
+
+                uiThread.awaitFinished ( 1 );
+        }
+}
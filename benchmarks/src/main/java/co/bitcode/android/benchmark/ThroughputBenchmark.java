@@ -0,0 +1,125 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.bitcode.android.benchmark.UiThread.EmptyTask;
+import co.bitcode.android.os.PriorityExecutor;
+import co.bitcode.android.os.TaskPriority;
+
+/**
+ * Measures how many tasks per second flow through a {@link PriorityExecutor} and back to the fake UI thread when a
+ * burst of tasks is submitted at once.
+ * 
+ * @author Lorenzo Villani
+ */
+@BenchmarkMode ( Mode.Throughput )
+@Fork ( 1 )
+@Measurement ( iterations = 5, time = 2 )
+@OutputTimeUnit ( TimeUnit.SECONDS )
+@State ( Scope.Benchmark )
+@Warmup ( iterations = 3, time = 2 )
+public class ThroughputBenchmark
+{
+        private static final int BURST_SIZE = 1000;
+        private static final TaskPriority[] PRIORITIES = TaskPriority.values ();
+
+        private PriorityExecutor mExecutor;
+
+        /**
+         * Worker threads, <code>N</code> is the amount of available processors.
+         */
+        @Param ( { "1", "5", "N" } )
+        public String workers;
+
+        @Setup
+        public void setUp ()
+        {
+                int poolSize;
+
+                if ( "N".equals ( workers ) )
+                {
+                        poolSize = Runtime.getRuntime ().availableProcessors ();
+                }
+                else
+                {
+                        poolSize = Integer.parseInt ( workers );
+                }
+
+                mExecutor = new PriorityExecutor ( "Benchmark", poolSize );
+        }
+
+        @TearDown
+        public void tearDown ()
+        {
+                mExecutor.shutdownNow ();
+        }
+
+        /**
+         * A burst of tasks sharing the same priority.
+         */
+        @Benchmark
+        @OperationsPerInvocation ( BURST_SIZE )
+        public void burst ( UiThread uiThread ) throws InterruptedException
+        {
+                EmptyTask task;
+
+                for ( int i = 0; i < BURST_SIZE; i++ )
+                {
+                        task = new EmptyTask ( uiThread );
+                        task.setExecutor ( mExecutor );
+                        task.execute ();
+                }
+
+                uiThread.awaitFinished ( BURST_SIZE );
+        }
+
+        /**
+         * A burst of tasks with mixed priorities, exercising reordering in the executor queue.
+         */
+        @Benchmark
+        @OperationsPerInvocation ( BURST_SIZE )
+        public void mixedPriorities ( UiThread uiThread ) throws InterruptedException
+        {
+                EmptyTask task;
+
+                for ( int i = 0; i < BURST_SIZE; i++ )
+                {
+                        task = new EmptyTask ( uiThread );
+                        task.setExecutor ( mExecutor );
+                        task.setPriority ( PRIORITIES[i % PRIORITIES.length] );
+                        task.execute ();
+                }
+
+                uiThread.awaitFinished ( BURST_SIZE );
+        }
+}
@@ -0,0 +1,141 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import co.bitcode.android.os.AsyncTask;
+import co.bitcode.android.os.Dispatcher;
+import co.bitcode.android.os.HandlerDispatcher;
+
+/**
+ * A fake UI thread running a {@link Looper}, shared by all the threads of a benchmark.
+ * 
+ * @author Lorenzo Villani
+ */
+@State ( Scope.Benchmark )
+public class UiThread
+{
+        private Dispatcher mDispatcher;
+        private Looper mLooper;
+        private Semaphore mFinished;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * A task which does nothing in background and signals the benchmark thread when finished.
+         * 
+         * @author Lorenzo Villani
+         */
+        public static final class EmptyTask extends AsyncTask < Object, Object >
+        {
+                private final Semaphore mFinished;
+
+                public EmptyTask ( UiThread uiThread )
+                {
+                        super ( uiThread.mDispatcher );
+
+                        mFinished = uiThread.mFinished;
+                }
+
+                @Override
+                protected Object doInBackground ( Object ... params ) throws Exception
+                {
+                        return params;
+                }
+
+                @Override
+                protected void onFinish ( Object result )
+                {
+                        mFinished.release ();
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Setup
+        // -------------------------------------------------------------------------------------------------------------
+
+        @Setup
+        public void start () throws InterruptedException
+        {
+                final CountDownLatch ready;
+                final Looper[] looper = new Looper[1];
+                Thread thread;
+
+                ready = new CountDownLatch ( 1 );
+
+                thread = new Thread ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                Looper.prepare ();
+
+                                looper[0] = Looper.myLooper ();
+
+                                ready.countDown ();
+
+                                Looper.loop ();
+                        }
+                }, "main" );
+                thread.setDaemon ( true );
+                thread.start ();
+
+                ready.await ();
+
+                mLooper = looper[0];
+                mDispatcher = new HandlerDispatcher ( new Handler ( mLooper ) );
+                mFinished = new Semaphore ( 0 );
+        }
+
+        @TearDown
+        public void stop ()
+        {
+                mLooper.quit ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Waits until the given amount of {@link EmptyTask}s have been delivered to {@link EmptyTask#onFinish(Object)}.
+         * 
+         * @param tasks Amount of tasks.
+         * @throws InterruptedException
+         */
+        public void awaitFinished ( int tasks ) throws InterruptedException
+        {
+                mFinished.acquire ( tasks );
+        }
+
+        public Dispatcher getDispatcher ()
+        {
+                return mDispatcher;
+        }
+}
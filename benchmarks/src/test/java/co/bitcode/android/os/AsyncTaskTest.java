@@ -0,0 +1,375 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import co.bitcode.android.os.PriorityExecutor.OverflowPolicy;
+
+/**
+ * Runs tasks on a single worker thread, with callbacks delivered by a {@link ThreadDispatcher}.
+ *
+ * @author Lorenzo Villani
+ */
+public class AsyncTaskTest
+{
+        private static final long TIMEOUT_SECONDS = 5;
+
+        private ThreadDispatcher mDispatcher;
+        private PriorityExecutor mExecutor;
+        private List < String > mStarted;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Shares its computation with all other loads of the same picture in flight.
+         *
+         * @author Lorenzo Villani
+         */
+        private static final class Load extends AsyncTask < Object, String >
+        {
+                private volatile boolean mCancelled;
+                private volatile long mDurationMillis;
+                private volatile Throwable mError;
+                private final CountDownLatch mFinalized;
+                private final String mPicture;
+                private volatile String mResult;
+                private final List < String > mStarted;
+                private volatile boolean mTimedOut;
+
+                public Load ( Dispatcher dispatcher, Executor executor, String picture, List < String > started )
+                {
+                        super ( dispatcher );
+
+                        mFinalized = new CountDownLatch ( 1 );
+                        mPicture = picture;
+                        mStarted = started;
+
+                        setCoalescingKey ( picture );
+                        setExecutor ( executor );
+                }
+
+                public boolean awaitFinalized () throws InterruptedException
+                {
+                        return mFinalized.await ( TIMEOUT_SECONDS, TimeUnit.SECONDS );
+                }
+
+                @Override
+                protected String doInBackground ( Object ... params ) throws Exception
+                {
+                        mStarted.add ( mPicture );
+
+                        if ( mDurationMillis > 0 )
+                        {
+                                Thread.sleep ( mDurationMillis );
+                        }
+
+                        return "loaded";
+                }
+
+                @Override
+                protected void onCatchError ( Throwable t )
+                {
+                        mError = t;
+                }
+
+                @Override
+                protected void onCancelled ()
+                {
+                        super.onCancelled ();
+
+                        mCancelled = true;
+                }
+
+                @Override
+                protected void onFinalize ()
+                {
+                        super.onFinalize ();
+
+                        mFinalized.countDown ();
+                }
+
+                @Override
+                protected void onFinish ( String result )
+                {
+                        super.onFinish ( result );
+
+                        mResult = result;
+                }
+
+                @Override
+                protected void onTimeout ()
+                {
+                        super.onTimeout ();
+
+                        mTimedOut = true;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Setup
+        // -------------------------------------------------------------------------------------------------------------
+
+        @Before
+        public void setUp ()
+        {
+                mDispatcher = new ThreadDispatcher ( "AsyncTaskTest" );
+                mExecutor = new PriorityExecutor ( "AsyncTaskTest", 1 );
+                mExecutor.setCapacity ( 1, OverflowPolicy.DROP_OLDEST );
+                mStarted = Collections.synchronizedList ( new ArrayList < String > () );
+        }
+
+        @After
+        public void tearDown ()
+        {
+                mExecutor.shutdownNow ();
+                mDispatcher.shutdown ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Tests
+        // -------------------------------------------------------------------------------------------------------------
+
+        @Test
+        public void cancellingLastSubscriberSucceeds () throws InterruptedException
+        {
+                final Load load;
+                final boolean[] cancelled;
+
+                block ();
+
+                load = newLoad ( "picture" );
+                cancelled = new boolean[1];
+
+                runOnDispatcher ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                load.execute ();
+
+                                // Owns the computation, which is still queued
+                                cancelled[0] = load.cancel ( true );
+                        }
+                } );
+
+                Assert.assertTrue ( cancelled[0] );
+                Assert.assertTrue ( load.awaitFinalized () );
+                Assert.assertTrue ( load.mCancelled );
+        }
+
+        @Test
+        public void droppedComputationCancelsAllSubscribers () throws InterruptedException
+        {
+                final Load first;
+                final Load second;
+                final Load third;
+                CountDownLatch release;
+
+                release = block ();
+
+                first = newLoad ( "picture" );
+                second = newLoad ( "picture" );
+
+                runOnDispatcher ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                // Queued behind the blocker, the second one joins the first
+                                first.execute ();
+                                second.execute ();
+                        }
+                } );
+
+                // Drops the computation out of the full queue
+                mExecutor.execute ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                        }
+                } );
+
+                Assert.assertTrue ( first.awaitFinalized () );
+                Assert.assertTrue ( second.awaitFinalized () );
+                Assert.assertTrue ( first.mCancelled );
+                Assert.assertTrue ( second.mCancelled );
+
+                release.countDown ();
+
+                third = newLoad ( "picture" );
+
+                runOnDispatcher ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                third.execute ();
+                        }
+                } );
+
+                Assert.assertTrue ( third.awaitFinalized () );
+                Assert.assertFalse ( third.mCancelled );
+                Assert.assertEquals ( "loaded", third.mResult );
+        }
+
+        @Test
+        public void subscribersTimeOutWithComputation () throws InterruptedException
+        {
+                final Load first;
+                final Load second;
+
+                first = newLoad ( "picture" );
+                first.mDurationMillis = TimeUnit.SECONDS.toMillis ( TIMEOUT_SECONDS * 2 );
+                first.setTimeout ( 50 );
+                second = newLoad ( "picture" );
+
+                runOnDispatcher ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                first.execute ();
+
+                                // Without a deadline of its own
+                                second.execute ();
+                        }
+                } );
+
+                Assert.assertTrue ( first.awaitFinalized () );
+                Assert.assertTrue ( second.awaitFinalized () );
+                Assert.assertTrue ( first.mTimedOut );
+                Assert.assertTrue ( second.mTimedOut );
+                Assert.assertNull ( second.mError );
+        }
+
+        @Test
+        public void urgentSubscriberRaisesPriorityOfComputation () throws InterruptedException
+        {
+                final Load prefetch;
+                final Load other;
+                final Load visible;
+                CountDownLatch release;
+
+                mExecutor.setCapacity ( 0, OverflowPolicy.REJECT );
+
+                release = block ();
+
+                prefetch = newLoad ( "picture" );
+                prefetch.setPriority ( TaskPriority.PREFETCH );
+                other = newLoad ( "other" );
+                visible = newLoad ( "picture" );
+
+                runOnDispatcher ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                prefetch.execute ();
+                                other.execute ();
+
+                                // The picture scrolls into view before the prefetch starts
+                                visible.execute ();
+                        }
+                } );
+
+                release.countDown ();
+
+                Assert.assertTrue ( prefetch.awaitFinalized () );
+                Assert.assertTrue ( other.awaitFinalized () );
+                Assert.assertTrue ( visible.awaitFinalized () );
+                Assert.assertEquals ( Arrays.asList ( "picture", "other" ), mStarted );
+                Assert.assertEquals ( "loaded", visible.mResult );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Keeps the worker thread busy until the returned latch is released.
+         */
+        private CountDownLatch block () throws InterruptedException
+        {
+                final CountDownLatch release;
+                final CountDownLatch started;
+
+                release = new CountDownLatch ( 1 );
+                started = new CountDownLatch ( 1 );
+
+                mExecutor.execute ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                started.countDown ();
+
+                                try
+                                {
+                                        release.await ();
+                                }
+                                catch ( InterruptedException ex )
+                                {
+                                        // Shut down
+                                }
+                        }
+                } );
+
+                Assert.assertTrue ( started.await ( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+
+                return release;
+        }
+
+        private Load newLoad ( String picture )
+        {
+                return new Load ( mDispatcher, mExecutor, picture, mStarted );
+        }
+
+        private void runOnDispatcher ( final Runnable runnable ) throws InterruptedException
+        {
+                final CountDownLatch done;
+
+                done = new CountDownLatch ( 1 );
+
+                mDispatcher.post ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                runnable.run ();
+
+                                done.countDown ();
+                        }
+                } );
+
+                Assert.assertTrue ( done.await ( TIMEOUT_SECONDS, TimeUnit.SECONDS ) );
+        }
+}
@@ -0,0 +1,140 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Feeds {@link ConcurrencyLimiter} with latencies on a fake clock, while tasks which never complete keep its limit
+ * fully used.
+ *
+ * @author Lorenzo Villani
+ */
+public class ConcurrencyLimiterTest
+{
+        private static final int MAX_LIMIT = 16;
+        private static final long NANOS_PER_MILLI = 1000000;
+
+        private static final Runnable NOOP = new Runnable ()
+        {
+                @Override
+                public void run ()
+                {
+                }
+        };
+
+        private ConcurrencyLimiter mLimiter;
+        private long mNow;
+
+        @Before
+        public void setUp ()
+        {
+                mLimiter = new ConcurrencyLimiter ( new Executor ()
+                {
+                        @Override
+                        public void execute ( Runnable command )
+                        {
+                                // Never completes
+                        }
+                }, 1, MAX_LIMIT );
+                mNow = 1;
+        }
+
+        @Test
+        public void fastOutlierDoesNotPinTheLimit ()
+        {
+                sample ( 1, true );
+                sample ( 10, true, 40 );
+
+                Assert.assertTrue ( "limit " + mLimiter.getLimit (), mLimiter.getLimit () >= 4 );
+        }
+
+        @Test
+        public void failuresDoNotLowerTheBaseline ()
+        {
+                int limit;
+
+                sample ( 10, true, 20 );
+
+                limit = mLimiter.getLimit ();
+
+                // Refused connections, nothing to do with congestion
+                sample ( 1, false, 20 );
+
+                Assert.assertEquals ( limit, mLimiter.getLimit () );
+
+                sample ( 15, true );
+
+                Assert.assertTrue ( "limit " + mLimiter.getLimit (), mLimiter.getLimit () >= limit );
+        }
+
+        @Test
+        public void slowFailuresBackOff ()
+        {
+                int limit;
+
+                sample ( 10, true, 20 );
+
+                limit = mLimiter.getLimit ();
+
+                sample ( 100, false );
+
+                Assert.assertTrue ( "limit " + mLimiter.getLimit (), mLimiter.getLimit () < limit );
+        }
+
+        @Test
+        public void baselineFollowsSlowerBackend ()
+        {
+                int limit;
+
+                sample ( 10, true, 20 );
+                sample ( 30, true, 5 );
+
+                limit = mLimiter.getLimit ();
+
+                sample ( 30, true, 40 );
+
+                Assert.assertTrue ( "limit " + mLimiter.getLimit (), mLimiter.getLimit () > limit );
+        }
+
+        private void sample ( long latencyMillis, boolean successful )
+        {
+                sample ( latencyMillis, successful, 1 );
+        }
+
+        private void sample ( long latencyMillis, boolean successful, int count )
+        {
+                long start;
+
+                for ( int i = 0; i < count; i++ )
+                {
+                        while ( mLimiter.getInFlight () < mLimiter.getLimit () )
+                        {
+                                mLimiter.execute ( NOOP );
+                        }
+
+                        start = mNow;
+                        mNow += latencyMillis * NANOS_PER_MILLI;
+
+                        mLimiter.adapt ( start, mNow, successful );
+                }
+        }
+}
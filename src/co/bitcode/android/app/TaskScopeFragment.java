@@ -0,0 +1,245 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.app;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.WeakHashMap;
+
+import android.app.Activity;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+
+import co.bitcode.android.os.AsyncTask;
+import co.bitcode.android.os.TaskScope;
+
+/**
+ * A headless {@link Fragment} which binds tasks to the lifetime of a {@link FragmentActivity} or one of its fragments.
+ * <p>
+ * It is added to the Activity the first time a scope is requested, and closes every scope it handed out when the
+ * Activity is destroyed, including on configuration changes:
+ * </p>
+ * 
+ * <pre>
+ * task.setScope ( TaskScopeFragment.of ( this ) );
+ * task.execute ();
+ * </pre>
+ * <p>
+ * Fragments which retain their instance across configuration changes should rather own a {@link TaskScope} and close
+ * it in their own {@link Fragment#onDestroy()}.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setScope(TaskScope)
+ * @since 0.0.1
+ */
+public class TaskScopeFragment extends Fragment
+{
+        private static final String TAG = "co.bitcode.android.app.TaskScopeFragment";
+
+        /**
+         * Fragments which have been committed but not attached yet, and cannot be found by tag.
+         */
+        private static final WeakHashMap < FragmentManager, TaskScopeFragment > PENDING;
+
+        private final List < TaskScope > mScopes;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * A scope owned by a Fragment, which is dead as soon as it is detached from its Activity.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class FragmentScope extends TaskScope
+        {
+                public FragmentScope ( Fragment fragment )
+                {
+                        super ( fragment );
+                }
+
+                @Override
+                protected boolean isAlive ( Object owner )
+                {
+                        return ( ( Fragment ) owner ).getActivity () != null;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Static Initialization
+        // -------------------------------------------------------------------------------------------------------------
+
+        static
+        {
+                PENDING = new WeakHashMap < FragmentManager, TaskScopeFragment > ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Used by the framework, use {@link #of(FragmentActivity)} or {@link #of(Fragment)} instead.
+         */
+        public TaskScopeFragment ()
+        {
+                super ();
+
+                mScopes = new ArrayList < TaskScope > ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Gets the scope of an Activity, which is closed when the Activity is destroyed. Must be called in the UI thread.
+         * 
+         * @param activity The owner.
+         * @return A {@link TaskScope}.
+         * @since 0.0.1
+         */
+        public static TaskScope of ( FragmentActivity activity )
+        {
+                return get ( activity ).getScope ( activity );
+        }
+
+        /**
+         * Gets the scope of a Fragment, which is closed when its Activity is destroyed. Callbacks are dropped as soon
+         * as the Fragment is detached. Must be called in the UI thread, while the Fragment is attached.
+         * 
+         * @param fragment The owner.
+         * @return A {@link TaskScope}.
+         * @since 0.0.1
+         */
+        public static TaskScope of ( Fragment fragment )
+        {
+                if ( fragment.getActivity () == null )
+                {
+                        throw new IllegalStateException ( "Fragment is not attached" );
+                }
+
+                return get ( fragment.getActivity () ).getScope ( fragment );
+        }
+
+        /**
+         * Forgets the pending registration, the Fragment can now be found by tag.
+         */
+        @Override
+        public void onAttach ( Activity activity )
+        {
+                super.onAttach ( activity );
+
+                PENDING.remove ( ( ( FragmentActivity ) activity ).getSupportFragmentManager () );
+        }
+
+        /**
+         * Closes all scopes, cancelling their tasks.
+         */
+        @Override
+        public void onDestroy ()
+        {
+                super.onDestroy ();
+
+                for ( TaskScope scope : mScopes )
+                {
+                        scope.close ();
+                }
+
+                mScopes.clear ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Finds the instance attached to an Activity, adding one if needed.
+         * 
+         * @param activity
+         * @return A TaskScopeFragment.
+         */
+        private static TaskScopeFragment get ( FragmentActivity activity )
+        {
+                FragmentManager fragmentManager;
+                TaskScopeFragment fragment;
+
+                fragmentManager = activity.getSupportFragmentManager ();
+                fragment = ( TaskScopeFragment ) fragmentManager.findFragmentByTag ( TAG );
+
+                if ( fragment == null )
+                {
+                        fragment = PENDING.get ( fragmentManager );
+                }
+
+                if ( fragment == null )
+                {
+                        fragment = new TaskScopeFragment ();
+
+                        PENDING.put ( fragmentManager, fragment );
+
+                        fragmentManager.beginTransaction ().add ( fragment, TAG ).commitAllowingStateLoss ();
+                }
+
+                return fragment;
+        }
+
+        /**
+         * @param owner
+         * @return The scope of the given owner, created on first use. Scopes of dead owners are discarded on the way.
+         */
+        private TaskScope getScope ( Object owner )
+        {
+                Iterator < TaskScope > iterator;
+                TaskScope scope;
+
+                iterator = mScopes.iterator ();
+
+                while ( iterator.hasNext () )
+                {
+                        scope = iterator.next ();
+
+                        if ( scope.isClosed () )
+                        {
+                                // Owner detached or collected
+                                iterator.remove ();
+                        }
+                        else if ( scope.getOwner () == owner )
+                        {
+                                return scope;
+                        }
+                }
+
+                if ( owner instanceof Fragment )
+                {
+                        scope = new FragmentScope ( ( Fragment ) owner );
+                }
+                else
+                {
+                        scope = new TaskScope ( owner );
+                }
+
+                mScopes.add ( scope );
+
+                return scope;
+        }
+}
@@ -16,13 +16,24 @@
 
 package co.bitcode.android.os;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import android.os.Handler;
 import android.util.Log;
 
 /**
@@ -31,6 +42,11 @@ import android.util.Log;
  * Just like {@link android.os.AsyncTask} it makes it possible to run a computation in background and publish the
  * results on the UI thread when done.
  * </p>
+ * <p>
+ * Tasks are run by a shared {@link PriorityExecutor} unless a different {@link Executor} is installed, either globally
+ * with {@link #setDefaultExecutor(Executor)} or for a single task with {@link #setExecutor(Executor)}. Use
+ * {@link #setPriority(TaskPriority)} to let urgent work overtake work which is already waiting.
+ * </p>
  * 
  * @author Lorenzo Villani
  * @param <Params> The type of the parameters passed to this computation.
@@ -43,41 +59,133 @@ public abstract class AsyncTask < Params, Result >
 {
         // Constants
         private static final String TAG = "AsyncTask";
-        private static final int TUNABLE_MAX_POOL_SIZE = 5;
+        static final long FRAME_INTERVAL_MILLIS = 16;
+
+        // Dispatcher
+        private static volatile Dispatcher sDefaultDispatcher;
 
         // Executor
-        private static final Executor EXECUTOR = Executors.newFixedThreadPool ( TUNABLE_MAX_POOL_SIZE );
+        private static volatile Executor sDefaultExecutor = new PriorityExecutor ( TAG );
+        private static volatile long sDefaultTimeout;
+        private Object mCoalescingKey;
+        private ResultCache < Result > mResultCache;
+        private RetryPolicy mRetryPolicy;
+        private TaskScope mScope;
+        private Object mSerializationKey;
+        private long mTimeout;
+        private Executor mExecutor;
+        private TaskPriority mPriority;
+
+        // Current execution
+        private volatile TaskFuture < Result > mFuture;
+        private volatile Executor mScheduledExecutor;
+
+        // Progress
+        private volatile long mLastProgressTime;
+        private AtomicLong mProgress;
+        private Runnable mProgressDelivery;
+        private AtomicBoolean mProgressPending;
 
         // Other
-        private Handler mHandler;
+        private Dispatcher mDispatcher;
         private Params[] mParameters;
 
+        /**
+         * A {@link FutureTask} which exposes the priority of its task to the executor and notifies the task when it
+         * gets cancelled.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static class TaskFuture < Result > extends FutureTask < Void > implements Prioritized
+        {
+                private volatile TaskPriority mPriority;
+                private volatile boolean mSucceeded;
+                private final Task < ?, Result > mTask;
+
+                public TaskFuture ( Task < ?, Result > task, TaskPriority priority )
+                {
+                        super ( task );
+
+                        mPriority = priority;
+
+                        mTask = task;
+                        mTask.mFuture = this;
+                }
+
+                @Override
+                public TaskPriority getPriority ()
+                {
+                        return mPriority;
+                }
+
+                @Override
+                protected void done ()
+                {
+                        if ( isCancelled () )
+                        {
+                                mTask.cancel ();
+                        }
+                }
+        }
+
         /**
          * Wraps AsyncTask's Callable to support all lifecycle enhancements.
+         * <p>
+         * In non-blocking mode the worker thread never waits for the UI thread: {@link AsyncTask#onStart()} has
+         * already been invoked by {@link AsyncTask#execute(Object...)} and the completion callbacks are posted as a
+         * single message. In blocking mode the worker thread waits for both {@link AsyncTask#onStart()} and the
+         * completion callbacks to run on the UI thread, which is what callers of
+         * {@link AsyncTask#getFutureTask(Object...)} have always relied upon.
+         * </p>
          * 
          * @author Lorenzo Villani
          * @param <Result>
          */
         private static class Task < Params, Result > implements Callable < Void >
         {
-                private Handler mHandler;
+                private static final int STATE_PENDING = 0;
+                private static final int STATE_RUNNING = 1;
+                private static final int STATE_CANCELLED = 2;
+
+                private int mAttempt;
+                private boolean mBlocking;
+                private volatile boolean mCancelled;
+                private AtomicBoolean mCompleted;
+                private Object mCacheKey;
+                private long mEnqueueTime;
+                private volatile Flight mFlight;
+                private FutureTask < Void > mFuture;
+                private Dispatcher mDispatcher;
                 private Params[] mParameters;
                 private AsyncTask < Params, Result > mParent;
+                private volatile Future < ? > mRetryTimer;
+                private AtomicInteger mState;
+                private volatile boolean mTimedOut;
 
                 /**
                  * Constructor.
                  * 
                  * @param parent
-                 * @param handler
+                 * @param dispatcher
+                 * @param blocking
                  * @param parameters
                  */
-                public Task ( AsyncTask < Params, Result > parent, Handler handler, Params ... parameters )
+                public Task ( AsyncTask < Params, Result > parent, Dispatcher dispatcher, boolean blocking,
+                                Params ... parameters )
                 {
-                        mHandler = handler;
+                        mBlocking = blocking;
+
+                        mDispatcher = dispatcher;
 
                         mParent = parent;
 
                         mParameters = parameters;
+
+                        mAttempt = 1;
+
+                        mCompleted = new AtomicBoolean ();
+
+                        mState = new AtomicInteger ( STATE_PENDING );
                 }
 
                 /**
@@ -86,59 +194,325 @@ public abstract class AsyncTask < Params, Result >
                 @Override
                 public Void call () throws Exception
                 {
-                        try
+                        Future < ? > deadline;
+                        Exception error;
+                        Flight flight;
+                        TaskFuture < ? > future;
+                        Result result;
+                        Runnable completion;
+                        long startTime;
+                        long timeout;
+                        Future < ? > watch;
+
+                        if ( !mState.compareAndSet ( STATE_PENDING, STATE_RUNNING ) )
+                        {
+                                // Cancelled before it could start, completion has already been posted
+                                return null;
+                        }
+
+                        future = ( TaskFuture < ? > ) mFuture;
+
+                        if ( mEnqueueTime != 0 )
                         {
-                                final Result result;
+                                TaskMetrics.recordQueueWait ( mParent, mEnqueueTime );
+                        }
+
+                        error = null;
+                        result = null;
+                        startTime = 0;
 
+                        try
+                        {
                                 // 1 - Start
-                                runOnUiThreadAndWait ( new Runnable ()
+                                if ( mBlocking )
                                 {
-                                        @Override
-                                        public void run ()
+                                        runOnUiThreadAndWait ( new Runnable ()
                                         {
-                                                mParent.onStart ();
-                                        }
-                                } );
+                                                @Override
+                                                public void run ()
+                                                {
+                                                        if ( !mParent.isScopeClosed () )
+                                                        {
+                                                                mParent.onStart ();
+                                                        }
+                                                }
+                                        } );
+                                }
 
                                 // 2a - Compute
-                                result = mParent.doInBackground ( mParameters );
+                                if ( TaskMetrics.isEnabled () )
+                                {
+                                        startTime = System.nanoTime ();
+                                }
 
-                                // 3 - Finish
-                                runOnUiThreadAndWait ( new Runnable ()
+                                timeout = mParent.getTimeout ();
+                                deadline = timeout > 0 ? Watchdog.schedule ( new Runnable ()
                                 {
                                         @Override
                                         public void run ()
                                         {
-                                                mParent.onFinish ( result );
+                                                expire ();
                                         }
-                                } );
+                                }, timeout ) : null;
+                                watch = Watchdog.watch ( mParent );
+
+                                try
+                                {
+                                        result = mParent.doInBackground ( mParameters );
+                                }
+                                finally
+                                {
+                                        Watchdog.cancel ( deadline );
+                                        Watchdog.cancel ( watch );
+                                }
                         }
-                        catch ( final Exception ex )
+                        catch ( Exception ex )
                         {
                                 // 2b - Catch error
-                                runOnUiThreadAndWait ( new Runnable ()
+                                error = ex;
+                        }
+
+                        if ( startTime != 0 )
+                        {
+                                TaskMetrics.recordRunTime ( mParent, startTime );
+                        }
+
+                        if ( error != null && retry ( error ) )
+                        {
+                                return null;
+                        }
+
+                        if ( error == null && !mTimedOut )
+                        {
+                                future.mSucceeded = true;
+
+                                if ( mCacheKey != null )
                                 {
-                                        @Override
-                                        public void run ()
-                                        {
-                                                mParent.onCatchError ( ex );
-                                        }
-                                } );
+                                        mParent.mResultCache.put ( mCacheKey, result );
+                                }
                         }
-                        finally
+
+                        // 3, 4 - Finish, catch error or cancel, then finalize
+                        flight = mFlight;
+
+                        if ( flight != null )
+                        {
+                                flight.finish ( result, error );
+                        }
+                        else if ( claimCompletion () )
                         {
-                                // 4 - Finalize
-                                runOnUiThreadAndWait ( new Runnable ()
+                                completion = new Completion < Result > ( this, result, error );
+
+                                if ( mBlocking )
                                 {
-                                        @Override
-                                        public void run ()
+                                        runOnUiThreadAndWait ( completion );
+                                }
+                                else
+                                {
+                                        mDispatcher.post ( completion );
+                                }
+                        }
+
+                        return null;
+                }
+
+                /**
+                 * Marks this task as cancelled. If the computation did not start yet, it never will and completion
+                 * callbacks are posted right away, otherwise they are posted by the worker thread once
+                 * {@link AsyncTask#doInBackground(Object...)} returns.
+                 * <p>
+                 * If this task computes the result of a {@link Flight}, for example because the executor dropped it,
+                 * all subscribers of the flight are cancelled as well.
+                 * </p>
+                 */
+                public void cancel ()
+                {
+                        Flight flight;
+
+                        mCancelled = true;
+
+                        Watchdog.cancel ( mRetryTimer );
+
+                        if ( !mState.compareAndSet ( STATE_PENDING, STATE_CANCELLED ) )
+                        {
+                                return;
+                        }
+
+                        flight = mFlight;
+
+                        if ( flight != null && flight.abort ( mFuture ) )
+                        {
+                                return;
+                        }
+
+                        if ( claimCompletion () )
+                        {
+                                postCompletion ( null, null );
+                        }
+                }
+
+                /**
+                 * Schedules another attempt of a failed computation, according to the retry policy of the task. The
+                 * worker thread is released while waiting.
+                 * 
+                 * @param error The failure.
+                 * @return <code>true</code> if another attempt has been scheduled.
+                 */
+                private boolean retry ( Exception error )
+                {
+                        final Executor executor;
+                        final TaskFuture < Result > future;
+                        Flight flight;
+                        RetryPolicy policy;
+                        FutureTask < Void > previous;
+
+                        executor = mParent.mScheduledExecutor;
+                        policy = mParent.mRetryPolicy;
+
+                        if ( policy == null || mBlocking || executor == null || mCancelled || mTimedOut
+                                        || mAttempt >= policy.getMaxAttempts () || !policy.isRetryable ( error ) )
+                        {
+                                return false;
+                        }
+
+                        previous = mFuture;
+                        future = new TaskFuture < Result > ( this, ( ( Prioritized ) previous ).getPriority () );
+                        flight = mFlight;
+
+                        if ( flight != null && !flight.retry ( future ) )
+                        {
+                                // Nobody is interested in the outcome anymore
+                                return false;
+                        }
+
+                        if ( mParent.mFuture == previous )
+                        {
+                                mParent.mFuture = future;
+                        }
+
+                        mState.set ( STATE_PENDING );
+
+                        if ( mCancelled )
+                        {
+                                cancel ();
+
+                                return true;
+                        }
+
+                        if ( executor instanceof SerialExecutor
+                                        && ( ( SerialExecutor ) executor ).hold ( previous, future )
+                                        && future.isCancelled () )
+                        {
+                                // Cancelled before the lane was held, nobody else is going to release it
+                                removeFromQueue ( executor, future );
+                        }
+
+                        // Not on the timer thread, a caller-runs executor would stall every deadline
+                        mRetryTimer = Watchdog.scheduleHandOff ( new Runnable ()
+                        {
+                                @Override
+                                public void run ()
+                                {
+                                        if ( future.isCancelled () )
+                                        {
+                                                return;
+                                        }
+
+                                        if ( mEnqueueTime != 0 )
+                                        {
+                                                // Queue wait of this attempt, not including the backoff
+                                                mEnqueueTime = System.nanoTime ();
+                                        }
+
+                                        try
+                                        {
+                                                executor.execute ( future );
+                                        }
+                                        catch ( RejectedExecutionException ex )
                                         {
-                                                mParent.onFinalize ();
+                                                fail ( ex );
                                         }
-                                } );
+                                }
+                        }, policy.getDelay ( mAttempt ) );
+
+                        mAttempt++;
+
+                        return true;
+                }
+
+                /**
+                 * Delivers a failure which happened outside of the computation, such as the executor rejecting it.
+                 * 
+                 * @param error The failure.
+                 */
+                private void fail ( Exception error )
+                {
+                        Flight flight;
+
+                        flight = mFlight;
+
+                        if ( flight != null )
+                        {
+                                flight.finish ( null, error );
                         }
+                        else if ( claimCompletion () )
+                        {
+                                postCompletion ( null, error );
+                        }
+                }
 
-                        return null;
+                /**
+                 * Invoked when the deadline of a running task expires. Completion callbacks are posted right away,
+                 * then the worker thread is interrupted.
+                 */
+                public void expire ()
+                {
+                        Flight flight;
+
+                        flight = mFlight;
+
+                        if ( flight != null )
+                        {
+                                // Subscribers which did not set a deadline time out along with this one
+                                flight.expire ();
+                        }
+                        else if ( claimCompletion () )
+                        {
+                                mTimedOut = true;
+
+                                postCompletion ( null, null );
+                        }
+
+                        mFuture.cancel ( true );
+                }
+
+                /**
+                 * Makes sure completion callbacks are delivered only once.
+                 * 
+                 * @return <code>true</code> if the caller is in charge of delivering completion callbacks.
+                 */
+                public boolean claimCompletion ()
+                {
+                        return mCompleted.compareAndSet ( false, true );
+                }
+
+                /**
+                 * @return Whether this task has been cancelled.
+                 */
+                public boolean isCancelled ()
+                {
+                        return mCancelled;
+                }
+
+                /**
+                 * Posts completion callbacks to the UI thread without waiting for them.
+                 * 
+                 * @param result
+                 * @param error
+                 */
+                public void postCompletion ( Result result, Exception error )
+                {
+                        mDispatcher.post ( new Completion < Result > ( this, result, error ) );
                 }
 
                 /**
@@ -154,7 +528,7 @@ public abstract class AsyncTask < Params, Result >
 
                         countDownLatch = new CountDownLatch ( 1 );
 
-                        mHandler.post ( new Runnable ()
+                        mDispatcher.post ( new Runnable ()
                         {
                                 @Override
                                 public void run ()
@@ -184,48 +558,961 @@ public abstract class AsyncTask < Params, Result >
         }
 
         /**
-         * Constructor.
+         * Delivers the outcome of a computation on the UI thread, fusing the finish (or catch error, or cancel) and
+         * finalize steps into a single message.
+         * 
+         * @author Lorenzo Villani
+         * @param <Result>
          */
-        public AsyncTask ()
+        private static class Completion < Result > implements Runnable
         {
-                mHandler = new Handler ();
-        }
+                private Exception mError;
+                private Result mResult;
+                private Task < ?, Result > mTask;
 
-        /**
-         * @param args
-         */
-        public void execute ( Params ... params )
-        {
-                EXECUTOR.execute ( getFutureTask ( params ) );
-        }
+                /**
+                 * Constructor.
+                 * 
+                 * @param task
+                 * @param result
+                 * @param error
+                 */
+                public Completion ( Task < ?, Result > task, Result result, Exception error )
+                {
+                        mError = error;
 
-        /**
-         * @param params
-         * @return A FutureTask
-         */
-        public final FutureTask < Void > getFutureTask ( Params ... params )
-        {
-                return new FutureTask < Void > ( new Task < Params, Result > ( this, mHandler, params ) );
-        }
+                        mResult = result;
 
-        /**
-         * @return Parameters passed to the computation step.
-         */
-        protected Params[] getParameters ()
-        {
-                return mParameters;
+                        mTask = task;
+                }
+
+                @Override
+                public void run ()
+                {
+                        AsyncTask < ?, Result > parent;
+                        long startTime;
+
+                        parent = mTask.mParent;
+                        startTime = TaskMetrics.isEnabled () ? System.nanoTime () : 0;
+
+                        if ( parent.mScope != null )
+                        {
+                                parent.mScope.remove ( parent );
+
+                                if ( parent.mScope.isClosed () )
+                                {
+                                        // The owner is gone, nobody is interested in the outcome
+                                        return;
+                                }
+                        }
+
+                        try
+                        {
+                                parent.flushPartialResults ();
+                                parent.flushProgress ();
+
+                                if ( mTask.mTimedOut )
+                                {
+                                        parent.onTimeout ();
+                                }
+                                else if ( mTask.isCancelled () )
+                                {
+                                        parent.onCancelled ();
+                                }
+                                else if ( mError != null )
+                                {
+                                        parent.onCatchError ( mError );
+                                }
+                                else
+                                {
+                                        try
+                                        {
+                                                parent.onFinish ( mResult );
+                                        }
+                                        catch ( Exception ex )
+                                        {
+                                                parent.onCatchError ( ex );
+                                        }
+                                }
+                        }
+                        finally
+                        {
+                                parent.onFinalize ();
+
+                                if ( startTime != 0 )
+                                {
+                                        TaskMetrics.recordCallbackTime ( parent, startTime );
+                                }
+                        }
+                }
         }
 
         /**
-         * This callback method is invoked when it's time to perform the background computation.
+         * A background computation shared by all executions with the same coalescing key.
          * <p>
-         * This callback method is always invoked in a separate thread.
+         * The first execution of a key schedules its computation, executions started while it is in flight just
+         * subscribe to its outcome. Cancelling a subscriber detaches it, the computation itself is cancelled only when
+         * no subscribers are left. A computation dropped or rejected by its executor cancels all subscribers.
          * </p>
          * 
-         * @param params Computation parameters.
-         * @return
+         * @author Lorenzo Villani
+         * @see AsyncTask#setCoalescingKey(Object)
          */
-        protected abstract Result doInBackground ( Params ... params ) throws Exception;
+        private static class Flight
+        {
+                private static final Map < Object, Flight > FLIGHTS = new HashMap < Object, Flight > ();
+
+                private boolean mClosed;
+                private TaskFuture < ? > mComputation;
+                private Executor mExecutor;
+                private Object mKey;
+                private List < Task < ?, ? > > mSubscribers;
+
+                /**
+                 * Constructor.
+                 * 
+                 * @param key
+                 * @param computation
+                 * @param executor
+                 */
+                private Flight ( Object key, TaskFuture < ? > computation, Executor executor )
+                {
+                        mComputation = computation;
+
+                        mExecutor = executor;
+
+                        mKey = key;
+
+                        mSubscribers = new ArrayList < Task < ?, ? > > ();
+                }
+
+                /**
+                 * Subscribes a task to the computation in flight for the given key, or starts a new computation.
+                 * 
+                 * @param key Coalescing key.
+                 * @param future The task to subscribe.
+                 * @param executor The executor which runs new computations.
+                 */
+                public static void subscribe ( Object key, TaskFuture < ? > future, Executor executor )
+                {
+                        Flight flight;
+
+                        synchronized ( FLIGHTS )
+                        {
+                                flight = FLIGHTS.get ( key );
+
+                                if ( flight == null )
+                                {
+                                        flight = new Flight ( key, future, executor );
+
+                                        FLIGHTS.put ( key, flight );
+                                }
+
+                                flight.mSubscribers.add ( future.mTask );
+
+                                future.mTask.mFlight = flight;
+                        }
+
+                        if ( flight.mComputation == future )
+                        {
+                                try
+                                {
+                                        executor.execute ( future );
+                                }
+                                catch ( RejectedExecutionException ex )
+                                {
+                                        flight.finish ( null, ex );
+                                }
+                        }
+                        else
+                        {
+                                flight.raisePriority ( future.mPriority );
+                        }
+                }
+
+                /**
+                 * Cancels all subscribers, because the computation will never run. The key is released, so that the
+                 * next execution starts a new computation.
+                 * 
+                 * @param computation The cancelled computation.
+                 * @return <code>false</code> if <code>computation</code> is not the computation of this flight, or
+                 *         the flight is already over.
+                 */
+                public boolean abort ( FutureTask < Void > computation )
+                {
+                        List < Task < ?, ? > > subscribers;
+
+                        synchronized ( FLIGHTS )
+                        {
+                                if ( mClosed || mComputation != computation )
+                                {
+                                        return false;
+                                }
+
+                                close ();
+
+                                subscribers = new ArrayList < Task < ?, ? > > ( mSubscribers );
+
+                                mSubscribers.clear ();
+                        }
+
+                        for ( Task < ?, ? > subscriber : subscribers )
+                        {
+                                if ( subscriber.claimCompletion () )
+                                {
+                                        subscriber.mCancelled = true;
+
+                                        subscriber.postCompletion ( null, null );
+                                }
+                        }
+
+                        return true;
+                }
+
+                /**
+                 * Detaches a subscriber, which receives {@link AsyncTask#onCancelled()}.
+                 * 
+                 * @param task The subscriber.
+                 * @param mayInterruptIfRunning Whether the computation may be interrupted if this was the last
+                 *                subscriber.
+                 * @return <code>false</code> if the subscriber had already completed.
+                 */
+                public boolean cancel ( Task < ?, ? > task, boolean mayInterruptIfRunning )
+                {
+                        boolean claimed;
+                        boolean last;
+
+                        synchronized ( FLIGHTS )
+                        {
+                                mSubscribers.remove ( task );
+
+                                last = mSubscribers.isEmpty () && !mClosed;
+
+                                if ( last )
+                                {
+                                        close ();
+                                }
+                        }
+
+                        // Before cancelling the computation, which completes its own task if it is this one
+                        claimed = task.claimCompletion ();
+
+                        if ( claimed )
+                        {
+                                task.mCancelled = true;
+                        }
+
+                        if ( last && mComputation.cancel ( mayInterruptIfRunning ) )
+                        {
+                                removeFromQueue ( mExecutor, mComputation );
+                        }
+
+                        if ( !claimed )
+                        {
+                                return false;
+                        }
+
+                        task.postCompletion ( null, null );
+
+                        return true;
+                }
+
+                /**
+                 * Delivers {@link AsyncTask#onTimeout()} to all subscribers, because the deadline of the computation
+                 * expired.
+                 */
+                public void expire ()
+                {
+                        List < Task < ?, ? > > subscribers;
+
+                        synchronized ( FLIGHTS )
+                        {
+                                if ( !mClosed )
+                                {
+                                        close ();
+                                }
+
+                                subscribers = new ArrayList < Task < ?, ? > > ( mSubscribers );
+
+                                mSubscribers.clear ();
+                        }
+
+                        for ( Task < ?, ? > subscriber : subscribers )
+                        {
+                                if ( subscriber.claimCompletion () )
+                                {
+                                        subscriber.mTimedOut = true;
+
+                                        subscriber.postCompletion ( null, null );
+                                }
+                        }
+                }
+
+                /**
+                 * Delivers the outcome of the computation to all subscribers.
+                 * 
+                 * @param result
+                 * @param error
+                 */
+                @SuppressWarnings ( "unchecked" )
+                public void finish ( Object result, Exception error )
+                {
+                        List < Task < ?, ? > > subscribers;
+
+                        synchronized ( FLIGHTS )
+                        {
+                                if ( !mClosed )
+                                {
+                                        close ();
+                                }
+
+                                subscribers = new ArrayList < Task < ?, ? > > ( mSubscribers );
+
+                                mSubscribers.clear ();
+                        }
+
+                        for ( Task < ?, ? > subscriber : subscribers )
+                        {
+                                if ( subscriber.claimCompletion () )
+                                {
+                                        ( ( Task < ?, Object > ) subscriber ).postCompletion ( result, error );
+                                }
+                        }
+                }
+
+                /**
+                 * Replaces the computation with another attempt.
+                 * 
+                 * @param computation The new attempt.
+                 * @return <code>false</code> if there are no subscribers left.
+                 */
+                public boolean retry ( TaskFuture < ? > computation )
+                {
+                        synchronized ( FLIGHTS )
+                        {
+                                if ( mClosed )
+                                {
+                                        return false;
+                                }
+
+                                mComputation = computation;
+
+                                return true;
+                        }
+                }
+
+                /**
+                 * Lets a computation which has not been started yet run as early as its most urgent subscriber
+                 * requires, for example when a prefetched picture becomes visible. Only effective on a
+                 * {@link PriorityExecutor}.
+                 * 
+                 * @param priority Priority of a new subscriber.
+                 */
+                private void raisePriority ( TaskPriority priority )
+                {
+                        TaskFuture < ? > computation;
+
+                        synchronized ( FLIGHTS )
+                        {
+                                computation = mComputation;
+
+                                if ( mClosed || priority.compareTo ( computation.mPriority ) >= 0 )
+                                {
+                                        return;
+                                }
+
+                                // Also applies to further attempts
+                                computation.mPriority = priority;
+                        }
+
+                        if ( mExecutor instanceof PriorityExecutor )
+                        {
+                                ( ( PriorityExecutor ) mExecutor ).raisePriority ( computation, priority );
+                        }
+                }
+
+                /**
+                 * Stops accepting new subscribers. Must be called while holding the lock on {@link #FLIGHTS}.
+                 */
+                private void close ()
+                {
+                        mClosed = true;
+
+                        if ( FLIGHTS.get ( mKey ) == this )
+                        {
+                                FLIGHTS.remove ( mKey );
+                        }
+                }
+        }
+
+        /**
+         * Constructor.
+         */
+        public AsyncTask ()
+        {
+                this ( sDefaultDispatcher != null ? sDefaultDispatcher : new HandlerDispatcher () );
+        }
+
+        /**
+         * Constructor.
+         * 
+         * @param dispatcher Delivers callbacks of this task.
+         * @since 0.0.1
+         */
+        public AsyncTask ( Dispatcher dispatcher )
+        {
+                mDispatcher = dispatcher;
+
+                mPriority = TaskPriority.VISIBLE;
+
+                mProgress = new AtomicLong ();
+                mProgressPending = new AtomicBoolean ();
+                mProgressDelivery = new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                deliverProgress ();
+                        }
+                };
+        }
+
+        /**
+         * Gets the dispatcher used by tasks which don't specify one.
+         * 
+         * @return The default {@link Dispatcher}, or <code>null</code> if tasks post callbacks to the Looper of the
+         *         thread which created them.
+         * @since 0.0.1
+         */
+        public static Dispatcher getDefaultDispatcher ()
+        {
+                return sDefaultDispatcher;
+        }
+
+        /**
+         * Replaces the dispatcher used by tasks which don't specify one.
+         * <p>
+         * By default tasks post callbacks to the {@link android.os.Looper} of the thread which created them. Outside
+         * of Android, install a {@link ThreadDispatcher} before creating any task.
+         * </p>
+         * 
+         * @param dispatcher The new default {@link Dispatcher}, or <code>null</code> to restore the default behavior.
+         * @since 0.0.1
+         */
+        public static void setDefaultDispatcher ( Dispatcher dispatcher )
+        {
+                sDefaultDispatcher = dispatcher;
+        }
+
+        /**
+         * Gets the executor used by tasks which don't specify one.
+         * 
+         * @return The default {@link Executor}.
+         * @since 0.0.1
+         */
+        public static Executor getDefaultExecutor ()
+        {
+                return sDefaultExecutor;
+        }
+
+        /**
+         * Replaces the executor used by tasks which don't specify one.
+         * <p>
+         * Only tasks executed after this call are affected. The previous executor is not shut down.
+         * </p>
+         * 
+         * @param executor The new default {@link Executor}.
+         * @since 0.0.1
+         */
+        public static void setDefaultExecutor ( Executor executor )
+        {
+                if ( executor == null )
+                {
+                        throw new IllegalArgumentException ( "executor must not be null" );
+                }
+
+                sDefaultExecutor = executor;
+        }
+
+        /**
+         * @return The deadline of tasks which don't specify one, in milliseconds, or <code>0</code> if none.
+         * @since 0.0.1
+         */
+        public static long getDefaultTimeout ()
+        {
+                return sDefaultTimeout;
+        }
+
+        /**
+         * Sets the deadline of tasks which don't specify one.
+         * 
+         * @param millis Deadline in milliseconds, or <code>0</code> to let tasks run for as long as they need.
+         * @see #setTimeout(long)
+         * @since 0.0.1
+         */
+        public static void setDefaultTimeout ( long millis )
+        {
+                sDefaultTimeout = millis;
+        }
+
+        /**
+         * Executes this task.
+         * <p>
+         * {@link #onStart()} is invoked synchronously when this method is called from the UI thread, otherwise it is
+         * posted to the UI thread and the task is scheduled right after it. Worker threads never wait for the UI
+         * thread: the finish and finalize callbacks are posted together once the computation is done.
+         * </p>
+         * 
+         * @param params Computation parameters.
+         */
+        public void execute ( Params ... params )
+        {
+                final TaskFuture < Result > future;
+
+                future = newFutureTask ( false, params );
+
+                if ( mDispatcher.isDispatchThread () )
+                {
+                        start ( future );
+                }
+                else
+                {
+                        mDispatcher.post ( new Runnable ()
+                        {
+                                @Override
+                                public void run ()
+                                {
+                                        start ( future );
+                                }
+                        } );
+                }
+        }
+
+        /**
+         * Creates a {@link FutureTask} which can be run by any {@link Executor}.
+         * <p>
+         * Unlike {@link #execute(Object...)} the returned task blocks its thread while {@link #onStart()} and the
+         * completion callbacks run on the UI thread.
+         * </p>
+         * 
+         * @param params
+         * @return A FutureTask
+         */
+        public final FutureTask < Void > getFutureTask ( Params ... params )
+        {
+                return newFutureTask ( true, params );
+        }
+
+        /**
+         * Attempts to cancel the current execution of this task.
+         * <p>
+         * If the task is still waiting for a worker thread it is removed from the executor queue and never runs,
+         * otherwise the worker thread is interrupted when <code>mayInterruptIfRunning</code> is <code>true</code>. In
+         * both cases {@link #onCancelled()} is invoked in place of {@link #onFinish(Object)}, followed by
+         * {@link #onFinalize()}.
+         * </p>
+         * 
+         * @param mayInterruptIfRunning Whether the thread executing this task should be interrupted.
+         * @return <code>false</code> if the task could not be cancelled, typically because it has already completed.
+         * @since 0.0.1
+         */
+        public final boolean cancel ( boolean mayInterruptIfRunning )
+        {
+                Flight flight;
+                TaskFuture < Result > future;
+
+                future = mFuture;
+
+                if ( future == null )
+                {
+                        return false;
+                }
+
+                flight = future.mTask.mFlight;
+
+                if ( flight != null )
+                {
+                        return flight.cancel ( future.mTask, mayInterruptIfRunning );
+                }
+
+                if ( !future.cancel ( mayInterruptIfRunning ) )
+                {
+                        return false;
+                }
+
+                removeFromQueue ( mScheduledExecutor, future );
+
+                return true;
+        }
+
+        /**
+         * @return <code>true</code> if the current execution of this task has been cancelled.
+         * @since 0.0.1
+         */
+        public final boolean isCancelled ()
+        {
+                TaskFuture < Result > future;
+
+                future = mFuture;
+
+                return future != null && ( future.isCancelled () || future.mTask.isCancelled () );
+        }
+
+        /**
+         * @return The dispatcher which delivers callbacks of this task.
+         */
+        Dispatcher getDispatcher ()
+        {
+                return mDispatcher;
+        }
+
+        /**
+         * @return <code>true</code> while an execution of this task has not completed yet.
+         */
+        boolean isInFlight ()
+        {
+                TaskFuture < Result > future;
+
+                future = mFuture;
+
+                return future != null && !future.isDone ();
+        }
+
+        /**
+         * @return The coalescing key of this task, or <code>null</code> if executions are never shared.
+         * @since 0.0.1
+         */
+        public Object getCoalescingKey ()
+        {
+                return mCoalescingKey;
+        }
+
+        /**
+         * Lets concurrent executions share a single background computation.
+         * <p>
+         * When this task is executed while another execution with an equal key is still in flight, its
+         * {@link #doInBackground(Object...)} is not invoked: the outcome of the execution in flight is delivered to
+         * both. {@link #onStart()}, {@link #onFinalize()} and the other UI callbacks are still invoked for each
+         * execution. The key must therefore identify the computation, including its parameters and the type of its
+         * result.
+         * </p>
+         * <p>
+         * Coalescing only applies to {@link #execute(Object...)}. This must be called before executing the task.
+         * </p>
+         * 
+         * @param key A key with meaningful <code>equals()</code> and <code>hashCode()</code>, or <code>null</code>
+         *                to disable coalescing.
+         * @since 0.0.1
+         */
+        public void setCoalescingKey ( Object key )
+        {
+                mCoalescingKey = key;
+        }
+
+        /**
+         * @return The {@link Executor} which runs this task.
+         * @since 0.0.1
+         */
+        public Executor getExecutor ()
+        {
+                return mExecutor != null ? mExecutor : sDefaultExecutor;
+        }
+
+        /**
+         * Sets the {@link Executor} which runs this task, overriding the default one.
+         * 
+         * @param executor An {@link Executor} or <code>null</code> to use the default one.
+         * @since 0.0.1
+         */
+        public void setExecutor ( Executor executor )
+        {
+                mExecutor = executor;
+        }
+
+        /**
+         * @return The priority class of this task.
+         * @since 0.0.1
+         */
+        public TaskPriority getPriority ()
+        {
+                return mPriority;
+        }
+
+        /**
+         * Sets the priority class of this task. The default priority is {@link TaskPriority#VISIBLE}.
+         * <p>
+         * This must be called before executing the task.
+         * </p>
+         * 
+         * @param priority Priority class.
+         * @since 0.0.1
+         */
+        public void setPriority ( TaskPriority priority )
+        {
+                if ( priority == null )
+                {
+                        throw new IllegalArgumentException ( "priority must not be null" );
+                }
+
+                mPriority = priority;
+        }
+
+        /**
+         * @return The cache of results of this task, or <code>null</code> if results are not cached.
+         * @since 0.0.1
+         */
+        public ResultCache < Result > getResultCache ()
+        {
+                return mResultCache;
+        }
+
+        /**
+         * Memoizes results of this task.
+         * <p>
+         * Successful results are stored in the cache under the key returned by {@link #getCacheKey(Object...)}. When
+         * this task is executed with parameters whose result is cached, the cached result is delivered to
+         * {@link #onFinish(Object)} right after {@link #onStart()}, without running {@link #doInBackground(Object...)}
+         * or touching the executor. Only use this with computations which are pure functions of their parameters.
+         * </p>
+         * <p>
+         * Caching only applies to {@link #execute(Object...)}. This must be called before executing the task.
+         * </p>
+         * 
+         * @param cache A {@link ResultCache}, usually shared by all instances of a task class, or <code>null</code>
+         *                to disable caching.
+         * @since 0.0.1
+         */
+        public void setResultCache ( ResultCache < Result > cache )
+        {
+                mResultCache = cache;
+        }
+
+        /**
+         * @return The retry policy of this task, or <code>null</code> if failures are never retried.
+         * @since 0.0.1
+         */
+        public RetryPolicy getRetryPolicy ()
+        {
+                return mRetryPolicy;
+        }
+
+        /**
+         * Retries failed computations according to a {@link RetryPolicy}.
+         * <p>
+         * Failures accepted by {@link RetryPolicy#isRetryable(Exception)} run {@link #doInBackground(Object...)}
+         * again after a delay, {@link #onCatchError(Throwable)} is invoked only once all attempts failed. While
+         * waiting for a retry the task does not occupy a worker thread and can be cancelled as usual.
+         * </p>
+         * <p>
+         * Retries only apply to {@link #execute(Object...)}. This must be called before executing the task.
+         * </p>
+         * 
+         * @param policy A {@link RetryPolicy}, or <code>null</code> to never retry.
+         * @since 0.0.1
+         */
+        public void setRetryPolicy ( RetryPolicy policy )
+        {
+                mRetryPolicy = policy;
+        }
+
+        /**
+         * @return The scope this task is bound to, or <code>null</code> if it is not bound to any owner.
+         * @since 0.0.1
+         */
+        public TaskScope getScope ()
+        {
+                return mScope;
+        }
+
+        /**
+         * Binds this task to the lifetime of an owner.
+         * <p>
+         * When the scope is closed the task is cancelled and none of its UI callbacks, including
+         * {@link #onCancelled()} and {@link #onFinalize()}, are invoked anymore. Executing the task while its scope is
+         * closed cancels it right away. Use {@link #getOwner()} to reach the owner without keeping it alive.
+         * </p>
+         * 
+         * @param scope A {@link TaskScope}, or <code>null</code> to unbind this task.
+         * @see co.bitcode.android.app.TaskScopeFragment
+         * @since 0.0.1
+         */
+        public void setScope ( TaskScope scope )
+        {
+                mScope = scope;
+        }
+
+        /**
+         * @return The serialization key of this task, or <code>null</code> if it may run concurrently with any task.
+         * @since 0.0.1
+         */
+        public Object getSerializationKey ()
+        {
+                return mSerializationKey;
+        }
+
+        /**
+         * Keeps executions sharing a key from running concurrently.
+         * <p>
+         * Tasks with equal keys run one at a time, in the order they were executed, while tasks with different keys
+         * still run in parallel on the executor. Use this to guard writes to a shared resource, such as a file or an
+         * account, without blocking worker threads on a lock. Keys are hashed onto a fixed set of lanes, so unrelated
+         * keys may occasionally wait for each other as well.
+         * </p>
+         * <p>
+         * A cancelled task gives up its turn right away. A failed attempt keeps its turn while waiting to be retried,
+         * so that tasks executed in the meantime can't overtake it; the backoff holds no thread.
+         * </p>
+         * 
+         * @param key A key with meaningful <code>equals()</code> and <code>hashCode()</code>, or <code>null</code>
+         *                to allow concurrent executions.
+         * @since 0.0.1
+         */
+        public void setSerializationKey ( Object key )
+        {
+                mSerializationKey = key;
+        }
+
+        /**
+         * @return The deadline of this task in milliseconds, or <code>0</code> if it may run for as long as it needs.
+         * @since 0.0.1
+         */
+        public long getTimeout ()
+        {
+                return mTimeout > 0 ? mTimeout : sDefaultTimeout;
+        }
+
+        /**
+         * Sets how long {@link #doInBackground(Object...)} may run.
+         * <p>
+         * When the deadline expires {@link #onTimeout()} is invoked in place of {@link #onFinish(Object)} and the
+         * worker thread is interrupted. The worker thread goes back to the pool only once
+         * {@link #doInBackground(Object...)} returns, so long computations should honor interruption.
+         * </p>
+         * <p>
+         * Executions sharing the computation, see {@link #setCoalescingKey(Object)}, time out along with it, even if
+         * they did not set a deadline themselves.
+         * </p>
+         * 
+         * @param millis Deadline in milliseconds, or <code>0</code> to use the default one.
+         * @see #setDefaultTimeout(long)
+         * @since 0.0.1
+         */
+        public void setTimeout ( long millis )
+        {
+                mTimeout = millis;
+        }
+
+        /**
+         * @return The owner of the scope of this task, or <code>null</code> if it is not bound to any scope or the owner
+         *         has been garbage collected.
+         * @see #setScope(TaskScope)
+         * @since 0.0.1
+         */
+        protected final Object getOwner ()
+        {
+                TaskScope scope;
+
+                scope = mScope;
+
+                return scope != null ? scope.getOwner () : null;
+        }
+
+        /**
+         * @return Parameters passed to the computation step.
+         */
+        protected Params[] getParameters ()
+        {
+                return mParameters;
+        }
+
+        /**
+         * Publishes the progress of the background computation. This method can be invoked from
+         * {@link #doInBackground(Object...)} as often as needed.
+         * <p>
+         * Updates are coalesced: {@link #onProgress(int, int)} is invoked at most once per frame interval with the
+         * latest published values, older values are simply overwritten. Publishing does not allocate memory.
+         * </p>
+         * 
+         * @param value Amount of work done so far.
+         * @param max Total amount of work.
+         * @since 0.0.1
+         */
+        protected final void publishProgress ( int value, int max )
+        {
+                mProgress.set ( ( ( long ) max << 32 ) | ( value & 0xFFFFFFFFL ) );
+
+                if ( mProgressPending.compareAndSet ( false, true ) )
+                {
+                        mDispatcher.postDelayed ( mProgressDelivery, mLastProgressTime + FRAME_INTERVAL_MILLIS
+                                        - uptimeMillis () );
+                }
+        }
+
+        /**
+         * Computes the key under which the result of a computation is cached.
+         * <p>
+         * The default implementation returns a list of the parameters, which relies on their <code>equals()</code> and
+         * <code>hashCode()</code> methods.
+         * </p>
+         * 
+         * @param params Computation parameters.
+         * @return A cache key.
+         * @see #setResultCache(ResultCache)
+         * @since 0.0.1
+         */
+        protected Object getCacheKey ( Params ... params )
+        {
+                if ( params == null )
+                {
+                        return Collections.emptyList ();
+                }
+
+                return Arrays.asList ( params.clone () );
+        }
+
+        /**
+         * This callback method is invoked when it's time to perform the background computation.
+         * <p>
+         * This callback method is always invoked in a separate thread.
+         * </p>
+         * 
+         * @param params Computation parameters.
+         * @return
+         */
+        protected abstract Result doInBackground ( Params ... params ) throws Exception;
+
+        /**
+         * This callback method is invoked in place of {@link #onFinish(Object)} when the task has been cancelled.
+         * <p>
+         * This callback method is always invoked in the UI thread.
+         * </p>
+         * <p>
+         * The default implementation of this method does nothing.
+         * </p>
+         * 
+         * @see #cancel(boolean)
+         * @since 0.0.1
+         */
+        protected void onCancelled ()
+        {
+        }
+
+        /**
+         * This callback method is invoked in place of {@link #onFinish(Object)} when the deadline of the task expired.
+         * <p>
+         * This callback method is always invoked in the UI thread, as soon as the deadline expires: the worker thread
+         * is interrupted but it may still be running.
+         * </p>
+         * <p>
+         * The default implementation of this method does nothing.
+         * </p>
+         * 
+         * @see #setTimeout(long)
+         * @since 0.0.1
+         */
+        protected void onTimeout ()
+        {
+        }
 
         /**
          * Called when an error occurs during the asynchronous computation.
@@ -279,6 +1566,25 @@ public abstract class AsyncTask < Params, Result >
         {
         }
 
+        /**
+         * This callback method is invoked when the background computation publishes its progress.
+         * <p>
+         * This callback method is always invoked in the UI thread, at most once per frame interval, and never after
+         * the task completed.
+         * </p>
+         * <p>
+         * The default implementation of this method does nothing.
+         * </p>
+         * 
+         * @param value Amount of work done so far.
+         * @param max Total amount of work.
+         * @see #publishProgress(int, int)
+         * @since 0.0.1
+         */
+        protected void onProgress ( int value, int max )
+        {
+        }
+
         /**
          * This callback method is invoked when the computation is about to start.
          * <p>
@@ -293,4 +1599,249 @@ public abstract class AsyncTask < Params, Result >
         protected void onStart ()
         {
         }
+
+        /**
+         * @return Milliseconds from an arbitrary origin, unaffected by wall clock changes.
+         */
+        static long uptimeMillis ()
+        {
+                return System.nanoTime () / 1000000;
+        }
+
+        /**
+         * Delivers the latest published progress, if any. Must be called in the UI thread.
+         */
+        private void deliverProgress ()
+        {
+                long progress;
+
+                if ( mProgressPending.compareAndSet ( true, false ) )
+                {
+                        mLastProgressTime = uptimeMillis ();
+
+                        progress = mProgress.get ();
+
+                        if ( !isCancelled () && !isScopeClosed () )
+                        {
+                                onProgress ( ( int ) progress, ( int ) ( progress >>> 32 ) );
+                        }
+                }
+        }
+
+        /**
+         * Delivers pending partial results right away so that they are not reported after completion. Must be called in
+         * the UI thread. Tasks without partial results have nothing to do.
+         * 
+         * @see StreamingTask
+         */
+        void flushPartialResults ()
+        {
+                // Nothing to do
+        }
+
+        /**
+         * Delivers pending progress right away so that it is not reported after completion. Must be called in the UI
+         * thread.
+         */
+        private void flushProgress ()
+        {
+                mDispatcher.removeCallbacks ( mProgressDelivery );
+
+                deliverProgress ();
+        }
+
+        /**
+         * @return <code>true</code> if this task is bound to a closed scope and must not invoke UI callbacks.
+         */
+        boolean isScopeClosed ()
+        {
+                TaskScope scope;
+
+                scope = mScope;
+
+                return scope != null && scope.isClosed ();
+        }
+
+        /**
+         * Creates the {@link FutureTask} which runs this task.
+         * 
+         * @param blocking Whether the worker thread has to wait for UI callbacks.
+         * @param params Computation parameters.
+         * @return A FutureTask
+         */
+        private TaskFuture < Result > newFutureTask ( boolean blocking, Params ... params )
+        {
+                mParameters = params;
+
+                mScheduledExecutor = null;
+
+                mFuture = new TaskFuture < Result > ( new Task < Params, Result > ( this, mDispatcher, blocking, params ),
+                                mPriority );
+
+                if ( mScope != null && !mScope.add ( this ) )
+                {
+                        mFuture.cancel ( false );
+                }
+
+                return mFuture;
+        }
+
+        /**
+         * Invokes {@link #onStart()} and schedules the computation, unless its result is cached. Must be called in the UI
+         * thread.
+         * <p>
+         * If the executor rejects the computation, {@link #onCatchError(Throwable)} receives the
+         * {@link RejectedExecutionException}.
+         * </p>
+         * 
+         * @param future The task to schedule.
+         */
+        private void start ( TaskFuture < Result > future )
+        {
+                Result cached;
+                Executor executor;
+                Object key;
+                long startTime;
+
+                if ( future.isCancelled () )
+                {
+                        return;
+                }
+
+                if ( isScopeClosed () )
+                {
+                        future.cancel ( false );
+
+                        return;
+                }
+
+                startTime = TaskMetrics.isEnabled () ? System.nanoTime () : 0;
+
+                try
+                {
+                        onStart ();
+                }
+                catch ( Exception ex )
+                {
+                        if ( future.mTask.claimCompletion () )
+                        {
+                                new Completion < Result > ( future.mTask, null, ex ).run ();
+                        }
+
+                        return;
+                }
+
+                if ( mResultCache != null )
+                {
+                        key = getCacheKey ( mParameters );
+                        cached = mResultCache.get ( key );
+
+                        if ( cached != null )
+                        {
+                                if ( future.mTask.claimCompletion () )
+                                {
+                                        new Completion < Result > ( future.mTask, cached, null ).run ();
+                                }
+
+                                return;
+                        }
+
+                        future.mTask.mCacheKey = key;
+                }
+
+                executor = getExecutor ();
+
+                if ( startTime != 0 )
+                {
+                        TaskMetrics.recordCallbackTime ( this, startTime );
+                        TaskMetrics.recordQueueDepth ( this, executor );
+
+                        future.mTask.mEnqueueTime = System.nanoTime ();
+                }
+
+                if ( mSerializationKey != null )
+                {
+                        executor = new SerialExecutor ( mSerializationKey, executor );
+                }
+
+                mScheduledExecutor = executor;
+
+                if ( mCoalescingKey != null )
+                {
+                        Flight.subscribe ( mCoalescingKey, future, executor );
+                }
+                else
+                {
+                        try
+                        {
+                                executor.execute ( future );
+                        }
+                        catch ( RejectedExecutionException ex )
+                        {
+                                if ( future.mTask.claimCompletion () )
+                                {
+                                        new Completion < Result > ( future.mTask, null, ex ).run ();
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Tells whether a task handed to an executor ran to a successful end. An attempt of an {@link AsyncTask} which
+         * failed, timed out or was skipped, because the task had been cancelled in the meantime, did not.
+         * 
+         * @param future The task, once run.
+         * @return <code>false</code> if the task failed, has been cancelled or did not complete yet.
+         */
+        static boolean isSuccessful ( Future < ? > future )
+        {
+                if ( future instanceof TaskFuture )
+                {
+                        return ( ( TaskFuture < ? > ) future ).mSucceeded;
+                }
+
+                if ( !future.isDone () || future.isCancelled () )
+                {
+                        return false;
+                }
+
+                try
+                {
+                        future.get ();
+
+                        return true;
+                }
+                catch ( ExecutionException ex )
+                {
+                        return false;
+                }
+                catch ( InterruptedException ex )
+                {
+                        Thread.currentThread ().interrupt ();
+
+                        return false;
+                }
+        }
+
+        /**
+         * Removes a task which has not been started yet from the queue of its executor, if possible.
+         * 
+         * @param executor The executor the task was submitted to.
+         * @param future The task to remove.
+         */
+        static void removeFromQueue ( Executor executor, Runnable future )
+        {
+                if ( executor instanceof SerialExecutor )
+                {
+                        ( ( SerialExecutor ) executor ).remove ( future );
+                }
+                else if ( executor instanceof ConcurrencyLimiter )
+                {
+                        ( ( ConcurrencyLimiter ) executor ).remove ( future );
+                }
+                else if ( executor instanceof ThreadPoolExecutor )
+                {
+                        ( ( ThreadPoolExecutor ) executor ).remove ( future );
+                }
+        }
 }
@@ -0,0 +1,337 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import android.util.Log;
+
+/**
+ * Groups many small background computations into batches, each run as a single {@link AsyncTask}.
+ * <p>
+ * Parameters submitted within a short time window are collected and handed to a single invocation of
+ * {@link #doInBackground(List)} on a worker thread, then all results of the batch are delivered to the UI thread in a
+ * single message. This saves the scheduling overhead of one {@link AsyncTask} per item when the work per item is tiny,
+ * such as per-row lookups in an adapter.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @param <Params> The type of the parameters of a single computation.
+ * @param <Result> The type of the result of a single computation.
+ * @since 0.0.1
+ */
+public abstract class BatchTask < Params, Result >
+{
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Default maximum amount of parameters in a batch.
+         */
+        public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        private static final String TAG = "BatchTask";
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Fields
+        // -------------------------------------------------------------------------------------------------------------
+
+        private Dispatcher mDispatcher;
+        private Executor mExecutor;
+        private Runnable mFlush;
+        private int mMaxBatchSize;
+        private List < Params > mPending;
+        private TaskPriority mPriority;
+        private long mWindowMillis;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param windowMillis How long to wait for more parameters after the first one of a batch was submitted.
+         * @since 0.0.1
+         */
+        public BatchTask ( long windowMillis )
+        {
+                this ( windowMillis, DEFAULT_MAX_BATCH_SIZE );
+        }
+
+        /**
+         * @param windowMillis How long to wait for more parameters after the first one of a batch was submitted.
+         * @param maxBatchSize A batch is run right away once it holds this amount of parameters.
+         * @since 0.0.1
+         */
+        public BatchTask ( long windowMillis, int maxBatchSize )
+        {
+                mDispatcher = AsyncTask.getDefaultDispatcher () != null ? AsyncTask.getDefaultDispatcher ()
+                                : new HandlerDispatcher ();
+
+                mFlush = new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                flush ();
+                        }
+                };
+
+                mMaxBatchSize = maxBatchSize;
+
+                mPending = new ArrayList < Params > ();
+
+                mPriority = TaskPriority.VISIBLE;
+
+                mWindowMillis = windowMillis;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Runs all pending parameters right away, without waiting for the time window to elapse.
+         * 
+         * @since 0.0.1
+         */
+        public void flush ()
+        {
+                List < Params > batch;
+
+                synchronized ( this )
+                {
+                        batch = drain ();
+                }
+
+                if ( batch != null )
+                {
+                        run ( batch );
+                }
+        }
+
+        /**
+         * Sets the {@link Executor} which runs batches.
+         * 
+         * @param executor An {@link Executor} or <code>null</code> to use the default one.
+         * @see AsyncTask#setExecutor(Executor)
+         * @since 0.0.1
+         */
+        public void setExecutor ( Executor executor )
+        {
+                mExecutor = executor;
+        }
+
+        /**
+         * Sets the priority class of batches.
+         * 
+         * @param priority Priority class.
+         * @see AsyncTask#setPriority(TaskPriority)
+         * @since 0.0.1
+         */
+        public void setPriority ( TaskPriority priority )
+        {
+                mPriority = priority;
+        }
+
+        /**
+         * Adds parameters to the current batch. The batch is run once the time window elapses or once it is full,
+         * whichever comes first.
+         * 
+         * @param params Parameters of a single computation.
+         * @since 0.0.1
+         */
+        public void submit ( Params params )
+        {
+                List < Params > batch;
+                boolean first;
+
+                synchronized ( this )
+                {
+                        first = mPending.isEmpty ();
+
+                        mPending.add ( params );
+
+                        batch = mPending.size () >= mMaxBatchSize ? drain () : null;
+
+                        if ( batch == null && first )
+                        {
+                                // Under the lock, so that the timer always belongs to the current batch
+                                mDispatcher.postDelayed ( mFlush, mWindowMillis );
+                        }
+                }
+
+                if ( batch != null )
+                {
+                        run ( batch );
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Protected Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * This callback method is invoked when it's time to perform the background computation of a batch.
+         * <p>
+         * This callback method is always invoked in a separate thread.
+         * </p>
+         * 
+         * @param params Parameters of all computations in the batch, in submission order.
+         * @return One result for each parameter, in the same order.
+         * @throws Exception
+         * @since 0.0.1
+         */
+        protected abstract List < Result > doInBackground ( List < Params > params ) throws Exception;
+
+        /**
+         * Called when an error occurs during the computation of a batch.
+         * <p>
+         * This callback method is always invoked in the UI thread.
+         * </p>
+         * <p>
+         * The default implementation prints the error on the LogCat, then re-throws the exception wrapped in a
+         * {@link RuntimeException}.
+         * </p>
+         * 
+         * @param params Parameters of all computations in the batch.
+         * @param t The error.
+         * @since 0.0.1
+         */
+        protected void onCatchError ( List < Params > params, Throwable t )
+        {
+                Log.e ( TAG, t.getMessage (), t );
+
+                throw new RuntimeException ( t );
+        }
+
+        /**
+         * This callback method is invoked when a batch completed successfully.
+         * <p>
+         * This callback method is always invoked in the UI thread, once per batch.
+         * </p>
+         * <p>
+         * The default implementation invokes {@link #onResult(Object, Object)} for each computation in the batch.
+         * </p>
+         * 
+         * @param params Parameters of all computations in the batch.
+         * @param results Results of all computations in the batch, in the same order.
+         * @since 0.0.1
+         */
+        protected void onFinish ( List < Params > params, List < Result > results )
+        {
+                for ( int i = 0; i < params.size (); i++ )
+                {
+                        onResult ( params.get ( i ), results.get ( i ) );
+                }
+        }
+
+        /**
+         * This callback method is invoked for each computation of a batch which completed successfully.
+         * <p>
+         * This callback method is always invoked in the UI thread.
+         * </p>
+         * <p>
+         * The default implementation of this method does nothing.
+         * </p>
+         * 
+         * @param params Parameters of the computation.
+         * @param result Result of the computation.
+         * @since 0.0.1
+         */
+        protected void onResult ( Params params, Result result )
+        {
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Takes all pending parameters and stops the timer of their batch, so that it can't flush the next batch
+         * early. Must be called while holding the lock on this object.
+         * 
+         * @return The pending parameters, or <code>null</code> if there are none.
+         */
+        private List < Params > drain ()
+        {
+                List < Params > batch;
+
+                if ( mPending.isEmpty () )
+                {
+                        return null;
+                }
+
+                mDispatcher.removeCallbacks ( mFlush );
+
+                batch = mPending;
+
+                mPending = new ArrayList < Params > ();
+
+                return batch;
+        }
+
+        /**
+         * Runs a batch as a single {@link AsyncTask}.
+         * 
+         * @param batch Parameters of all computations in the batch.
+         */
+        private void run ( final List < Params > batch )
+        {
+                AsyncTask < Void, List < Result > > task;
+
+                task = new AsyncTask < Void, List < Result > > ( mDispatcher )
+                {
+                        @Override
+                        protected List < Result > doInBackground ( Void ... params ) throws Exception
+                        {
+                                List < Result > results;
+
+                                results = BatchTask.this.doInBackground ( batch );
+
+                                if ( results == null || results.size () != batch.size () )
+                                {
+                                        throw new IllegalStateException ( "Expected " + batch.size () + " results" );
+                                }
+
+                                return results;
+                        }
+
+                        @Override
+                        protected void onCatchError ( Throwable t )
+                        {
+                                BatchTask.this.onCatchError ( batch, t );
+                        }
+
+                        @Override
+                        protected void onFinish ( List < Result > result )
+                        {
+                                BatchTask.this.onFinish ( batch, result );
+                        }
+                };
+
+                task.setExecutor ( mExecutor );
+                task.setPriority ( mPriority );
+                task.execute ();
+        }
+}
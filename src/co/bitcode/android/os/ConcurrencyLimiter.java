@@ -0,0 +1,444 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.os;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An {@link Executor} which adapts the amount of tasks it runs concurrently to the latency they experience.
+ * <p>
+ * The limit follows an additive increase, multiplicative decrease scheme: while tasks complete about as fast as the
+ * fastest of the recent successful ones and the limit is fully used, it grows by roughly one task per round trip. When
+ * a task takes more than {@link #LATENCY_TOLERANCE} times that baseline, which is what happens on a congested link or
+ * an overloaded backend, the limit is cut by {@link #BACKOFF_RATIO}, at most once per round of tasks. Tasks beyond the
+ * limit wait here, ordered by {@link TaskPriority}, and are handed to the underlying executor as permits are released.
+ * </p>
+ * <p>
+ * Each limiter is an independent category: use one for network requests to a given backend, another for disk access,
+ * and install them with {@link AsyncTask#setExecutor(Executor)} or {@link AsyncTask#setDefaultExecutor(Executor)}. The
+ * underlying executor must have at least as many threads as the maximum limit, otherwise it caps the effective
+ * concurrency.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @since 0.0.1
+ */
+public class ConcurrencyLimiter implements Executor
+{
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Factor applied to the limit when latency degrades.
+         */
+        public static final double BACKOFF_RATIO = 0.75;
+
+        /**
+         * How many times slower than the baseline a task may be before it is taken as a sign of congestion.
+         */
+        public static final double LATENCY_TOLERANCE = 2.0;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Percentile of recent latencies taken as baseline. A low one rather than the minimum, so that a few tasks
+         * served unusually fast, by a cache along the way for example, do not make all others look congested.
+         */
+        private static final double BASELINE_PERCENTILE = 10;
+
+        /**
+         * Amount of recent successful tasks the baseline is computed on, so that it follows a backend which got slower
+         * for good.
+         */
+        private static final int BASELINE_WINDOW = 20;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Fields
+        // -------------------------------------------------------------------------------------------------------------
+
+        private final Executor mExecutor;
+        private int mInFlight;
+        private long mLastBackoffNanos;
+        private double mLimit;
+        private final int mMaxLimit;
+        private final int mMinLimit;
+        private long mSequence;
+        private int mSampleCount;
+        private final long[] mSamples;
+        private final PriorityQueue < Permit > mWaiting;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Wraps a task, holding one unit of concurrency from submission to the underlying executor until completion.
+         * 
+         * @author Lorenzo Villani
+         */
+        private final class Permit extends FutureTask < Void > implements Prioritized, Comparable < Permit >
+        {
+                private final Runnable mCommand;
+                private volatile boolean mFailed;
+                private final TaskPriority mPriority;
+                private final long mSequence;
+                private volatile long mStartNanos;
+
+                public Permit ( Runnable command, long sequence )
+                {
+                        super ( command, null );
+
+                        mCommand = command;
+                        mPriority = command instanceof Prioritized ? ( ( Prioritized ) command ).getPriority ()
+                                        : TaskPriority.VISIBLE;
+                        mSequence = sequence;
+                }
+
+                @Override
+                public int compareTo ( Permit another )
+                {
+                        int result;
+
+                        result = mPriority.compareTo ( another.mPriority );
+
+                        if ( result == 0 )
+                        {
+                                result = mSequence < another.mSequence ? -1 : ( mSequence > another.mSequence ? 1 : 0 );
+                        }
+
+                        return result;
+                }
+
+                @Override
+                public TaskPriority getPriority ()
+                {
+                        return mPriority;
+                }
+
+                @Override
+                public void run ()
+                {
+                        mStartNanos = System.nanoTime ();
+
+                        super.run ();
+                }
+
+                /**
+                 * @return Whether the task ran to a successful end, which is the only case its latency is a measure of
+                 *         the backend.
+                 */
+                public boolean isSuccessful ()
+                {
+                        if ( mFailed || isCancelled () )
+                        {
+                                return false;
+                        }
+
+                        return !( mCommand instanceof Future ) || AsyncTask.isSuccessful ( ( Future < ? > ) mCommand );
+                }
+
+                @Override
+                protected void done ()
+                {
+                        if ( isCancelled () && mCommand instanceof FutureTask )
+                        {
+                                // Discarded by the underlying executor
+                                ( ( FutureTask < ? > ) mCommand ).cancel ( false );
+                        }
+
+                        release ( this );
+                }
+
+                @Override
+                protected void setException ( Throwable t )
+                {
+                        mFailed = true;
+
+                        super.setException ( t );
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Creates a limiter running tasks on a dedicated {@link PriorityExecutor} with <code>maxLimit</code> threads.
+         * 
+         * @param name Name of the worker threads.
+         * @param minLimit Lowest concurrency, at least <code>1</code>.
+         * @param maxLimit Highest concurrency.
+         * @since 0.0.1
+         */
+        public ConcurrencyLimiter ( String name, int minLimit, int maxLimit )
+        {
+                this ( new PriorityExecutor ( name, maxLimit ), minLimit, maxLimit );
+        }
+
+        /**
+         * @param executor The executor which actually runs tasks.
+         * @param minLimit Lowest concurrency, at least <code>1</code>.
+         * @param maxLimit Highest concurrency.
+         * @since 0.0.1
+         */
+        public ConcurrencyLimiter ( Executor executor, int minLimit, int maxLimit )
+        {
+                if ( executor == null || minLimit < 1 || maxLimit < minLimit )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mExecutor = executor;
+                mLimit = minLimit;
+                mMaxLimit = maxLimit;
+                mMinLimit = minLimit;
+                mSamples = new long[BASELINE_WINDOW];
+                mWaiting = new PriorityQueue < Permit > ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        @Override
+        public void execute ( Runnable command )
+        {
+                Permit permit;
+
+                if ( command == null )
+                {
+                        throw new NullPointerException ();
+                }
+
+                synchronized ( this )
+                {
+                        permit = new Permit ( command, mSequence++ );
+
+                        if ( mInFlight >= ( int ) mLimit )
+                        {
+                                mWaiting.add ( permit );
+
+                                return;
+                        }
+
+                        mInFlight++;
+                }
+
+                try
+                {
+                        mExecutor.execute ( permit );
+                }
+                catch ( RejectedExecutionException ex )
+                {
+                        synchronized ( this )
+                        {
+                                mInFlight--;
+                        }
+
+                        throw ex;
+                }
+        }
+
+        /**
+         * @return Tasks currently handed to the underlying executor.
+         * @since 0.0.1
+         */
+        public synchronized int getInFlight ()
+        {
+                return mInFlight;
+        }
+
+        /**
+         * @return The current concurrency limit.
+         * @since 0.0.1
+         */
+        public synchronized int getLimit ()
+        {
+                return ( int ) mLimit;
+        }
+
+        /**
+         * @return Tasks waiting for the limit to allow them to run.
+         * @since 0.0.1
+         */
+        public synchronized int getWaiting ()
+        {
+                return mWaiting.size ();
+        }
+
+        /**
+         * Removes a task which is still waiting for a permit.
+         * 
+         * @param command The task.
+         * @return Whether the task has been removed.
+         * @since 0.0.1
+         */
+        public synchronized boolean remove ( Runnable command )
+        {
+                Iterator < Permit > iterator;
+
+                iterator = mWaiting.iterator ();
+
+                while ( iterator.hasNext () )
+                {
+                        if ( iterator.next ().mCommand == command )
+                        {
+                                iterator.remove ();
+
+                                return true;
+                        }
+                }
+
+                return false;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Package Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Adjusts the limit according to the latency of a completed task.
+         * <p>
+         * Only successful tasks make up the baseline and let the limit grow: failures, such as a refused connection,
+         * and tasks skipped because they had been cancelled in the meantime, are often much faster than actual work. A
+         * slow failure, such as a timeout, still counts as congestion.
+         * </p>
+         * 
+         * @param startNanos When the task started.
+         * @param endNanos When it completed.
+         * @param successful Whether it ran to a successful end.
+         */
+        synchronized void adapt ( long startNanos, long endNanos, boolean successful )
+        {
+                long baseline;
+                long latency;
+
+                latency = endNanos - startNanos;
+
+                if ( successful )
+                {
+                        mSamples[mSampleCount % BASELINE_WINDOW] = latency;
+                        mSampleCount++;
+                }
+
+                if ( mSampleCount == 0 )
+                {
+                        // Nothing to compare with yet
+                        return;
+                }
+
+                baseline = getBaseline ();
+
+                if ( latency > baseline * LATENCY_TOLERANCE )
+                {
+                        // Back off once per round: tasks started before the last cut saw the old limit
+                        if ( startNanos > mLastBackoffNanos )
+                        {
+                                mLimit = Math.max ( mMinLimit, mLimit * BACKOFF_RATIO );
+                                mLastBackoffNanos = endNanos;
+                        }
+                }
+                else if ( successful && mInFlight + 1 >= ( int ) mLimit )
+                {
+                        // Only grow a limit which is actually used
+                        mLimit = Math.min ( mMaxLimit, mLimit + 1 / mLimit );
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Must be called while holding the lock on this limiter, after at least one successful task.
+         * 
+         * @return The latency of the {@link #BASELINE_PERCENTILE} of recent successful tasks.
+         */
+        private long getBaseline ()
+        {
+                long[] samples;
+
+                // Arrays.copyOf() is not available before API level 9
+                samples = new long[Math.min ( mSampleCount, BASELINE_WINDOW )];
+
+                System.arraycopy ( mSamples, 0, samples, 0, samples.length );
+
+                Arrays.sort ( samples );
+
+                return samples[Math.max ( 0, ( int ) Math.ceil ( samples.length * BASELINE_PERCENTILE / 100 ) - 1 )];
+        }
+
+        /**
+         * Returns the permit of a completed task and hands waiting tasks to the underlying executor.
+         * 
+         * @param permit
+         */
+        private void release ( Permit permit )
+        {
+                Permit next;
+                long now;
+
+                now = System.nanoTime ();
+
+                synchronized ( this )
+                {
+                        mInFlight--;
+
+                        if ( permit.mStartNanos != 0 )
+                        {
+                                adapt ( permit.mStartNanos, now, permit.isSuccessful () );
+                        }
+                }
+
+                while ( true )
+                {
+                        synchronized ( this )
+                        {
+                                if ( mInFlight >= ( int ) mLimit || mWaiting.isEmpty () )
+                                {
+                                        return;
+                                }
+
+                                next = mWaiting.poll ();
+
+                                mInFlight++;
+                        }
+
+                        try
+                        {
+                                mExecutor.execute ( next );
+                        }
+                        catch ( RejectedExecutionException ex )
+                        {
+                                // Nobody is left to report the error to, releases its permit through done()
+                                next.cancel ( false );
+
+                                return;
+                        }
+                }
+        }
+}
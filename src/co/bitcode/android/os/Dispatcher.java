@@ -0,0 +1,62 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+/**
+ * Delivers {@link AsyncTask} callbacks to the thread which owns the task, normally the UI thread.
+ * <p>
+ * On Android tasks use a {@link HandlerDispatcher} bound to the thread which created them. Environments without a
+ * {@link android.os.Looper}, such as JVM tests or tools running the non-UI parts of an application, can install a
+ * {@link ThreadDispatcher} with {@link AsyncTask#setDefaultDispatcher(Dispatcher)} instead.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @since 0.0.1
+ */
+public interface Dispatcher
+{
+        /**
+         * @return <code>true</code> if the calling thread is the one callbacks are delivered to.
+         * @since 0.0.1
+         */
+        boolean isDispatchThread ();
+
+        /**
+         * Runs a callback on the dispatch thread, after all callbacks already posted.
+         * 
+         * @param runnable The callback.
+         * @since 0.0.1
+         */
+        void post ( Runnable runnable );
+
+        /**
+         * Runs a callback on the dispatch thread once the given amount of time elapsed.
+         * 
+         * @param runnable The callback.
+         * @param delayMillis Delay in milliseconds.
+         * @since 0.0.1
+         */
+        void postDelayed ( Runnable runnable, long delayMillis );
+
+        /**
+         * Removes all pending posts of a callback.
+         * 
+         * @param runnable The callback.
+         * @since 0.0.1
+         */
+        void removeCallbacks ( Runnable runnable );
+}
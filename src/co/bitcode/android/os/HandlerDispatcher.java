@@ -0,0 +1,74 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * A {@link Dispatcher} which delivers callbacks through an Android {@link Handler}.
+ * 
+ * @author Lorenzo Villani
+ * @since 0.0.1
+ */
+public class HandlerDispatcher implements Dispatcher
+{
+        private Handler mHandler;
+
+        /**
+         * Creates a dispatcher bound to the {@link Looper} of the calling thread.
+         * 
+         * @since 0.0.1
+         */
+        public HandlerDispatcher ()
+        {
+                this ( new Handler () );
+        }
+
+        /**
+         * @param handler The {@link Handler} callbacks are posted to.
+         * @since 0.0.1
+         */
+        public HandlerDispatcher ( Handler handler )
+        {
+                mHandler = handler;
+        }
+
+        @Override
+        public boolean isDispatchThread ()
+        {
+                return Looper.myLooper () == mHandler.getLooper ();
+        }
+
+        @Override
+        public void post ( Runnable runnable )
+        {
+                mHandler.post ( runnable );
+        }
+
+        @Override
+        public void postDelayed ( Runnable runnable, long delayMillis )
+        {
+                mHandler.postDelayed ( runnable, delayMillis );
+        }
+
+        @Override
+        public void removeCallbacks ( Runnable runnable )
+        {
+                mHandler.removeCallbacks ( runnable );
+        }
+}
@@ -0,0 +1,222 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram with a fixed set of buckets.
+ * <p>
+ * Recording a value takes a handful of atomic operations and never allocates memory, which makes it suitable for hot
+ * paths. Each bucket counts the values lower than or equal to its upper bound and greater than the upper bound of the
+ * previous bucket; the last bucket is unbounded.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see TaskMetrics
+ * @since 0.0.1
+ */
+public final class Histogram
+{
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Bucket upper bounds suited for durations expressed in microseconds, from 100 microseconds to 10 seconds.
+         */
+        public static final long[] LATENCY_BOUNDS = { 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000,
+                        250000, 500000, 1000000, 2500000, 5000000, 10000000 };
+
+        /**
+         * Bucket upper bounds suited for small counts, such as queue lengths.
+         */
+        public static final long[] COUNT_BOUNDS = { 0, 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024 };
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Fields
+        // -------------------------------------------------------------------------------------------------------------
+
+        private final long[] mBounds;
+        private final AtomicLongArray mCounts;
+        private final AtomicLong mMax;
+        private final AtomicLong mSum;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param bounds Upper bounds of all buckets but the last one, in ascending order.
+         * @since 0.0.1
+         */
+        public Histogram ( long[] bounds )
+        {
+                mBounds = bounds.clone ();
+                mCounts = new AtomicLongArray ( bounds.length + 1 );
+                mMax = new AtomicLong ();
+                mSum = new AtomicLong ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @return A copy of this histogram, unaffected by values recorded afterwards.
+         * @since 0.0.1
+         */
+        public Histogram copy ()
+        {
+                Histogram copy;
+
+                copy = new Histogram ( mBounds );
+
+                for ( int i = 0; i < mCounts.length (); i++ )
+                {
+                        copy.mCounts.set ( i, mCounts.get ( i ) );
+                }
+
+                copy.mMax.set ( mMax.get () );
+                copy.mSum.set ( mSum.get () );
+
+                return copy;
+        }
+
+        /**
+         * @return Upper bounds of all buckets but the last one.
+         * @since 0.0.1
+         */
+        public long[] getBounds ()
+        {
+                return mBounds.clone ();
+        }
+
+        /**
+         * @return Total amount of recorded values.
+         * @since 0.0.1
+         */
+        public long getCount ()
+        {
+                long count;
+
+                count = 0;
+
+                for ( int i = 0; i < mCounts.length (); i++ )
+                {
+                        count += mCounts.get ( i );
+                }
+
+                return count;
+        }
+
+        /**
+         * @return Amount of values recorded in each bucket.
+         * @since 0.0.1
+         */
+        public long[] getCounts ()
+        {
+                long[] counts;
+
+                counts = new long[mCounts.length ()];
+
+                for ( int i = 0; i < counts.length; i++ )
+                {
+                        counts[i] = mCounts.get ( i );
+                }
+
+                return counts;
+        }
+
+        /**
+         * @return The highest recorded value.
+         * @since 0.0.1
+         */
+        public long getMax ()
+        {
+                return mMax.get ();
+        }
+
+        /**
+         * Estimates a percentile with the upper bound of the bucket which contains it.
+         * 
+         * @param percentile A value between 0 and 100.
+         * @return The estimated percentile, or {@link #getMax()} if it falls in the last bucket.
+         * @since 0.0.1
+         */
+        public long getPercentile ( double percentile )
+        {
+                long[] counts;
+                long seen;
+                long threshold;
+
+                counts = getCounts ();
+                seen = 0;
+                threshold = ( long ) Math.ceil ( getCount () * percentile / 100 );
+
+                for ( int i = 0; i < mBounds.length; i++ )
+                {
+                        seen += counts[i];
+
+                        if ( seen >= threshold && seen > 0 )
+                        {
+                                return mBounds[i];
+                        }
+                }
+
+                return getMax ();
+        }
+
+        /**
+         * @return Sum of all recorded values.
+         * @since 0.0.1
+         */
+        public long getSum ()
+        {
+                return mSum.get ();
+        }
+
+        /**
+         * Records a value.
+         * 
+         * @param value The value to record.
+         * @since 0.0.1
+         */
+        public void record ( long value )
+        {
+                int bucket;
+                long max;
+
+                bucket = 0;
+
+                while ( bucket < mBounds.length && value > mBounds[bucket] )
+                {
+                        bucket++;
+                }
+
+                mCounts.incrementAndGet ( bucket );
+                mSum.addAndGet ( value );
+
+                max = mMax.get ();
+
+                while ( value > max && !mMax.compareAndSet ( max, value ) )
+                {
+                        max = mMax.get ();
+                }
+        }
+}
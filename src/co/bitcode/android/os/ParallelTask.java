@@ -0,0 +1,351 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.os;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An {@link AsyncTask} which processes its parameters in parallel, using all cores for a single computation.
+ * <p>
+ * Parameters are split into chunks handed to {@link #computeChunk(List)}, then the results of the chunks are reduced in
+ * order with {@link #combine(Object, Object)} and delivered to {@link #onFinish(Object)} as usual. The combiner must be
+ * associative, it does not need to be commutative.
+ * </p>
+ * <p>
+ * The worker thread running the task enlists helpers on the executor of the task, and all of them keep claiming the
+ * next unprocessed chunk until none is left, so that fast threads pick up the slack of slow ones. The worker thread
+ * takes part in the computation too, which guarantees progress even when the executor is saturated or nested parallel
+ * tasks wait on each other.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @param <Params> The type of the parameters passed to this computation.
+ * @param <Result> The type of the result of a chunk, and of the whole computation.
+ * @since 0.0.1
+ */
+public abstract class ParallelTask < Params, Result > extends AsyncTask < Params, Result >
+{
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Chunks per thread when the chunk size is picked automatically, leaving room for balancing uneven chunks.
+         */
+        private static final int CHUNKS_PER_THREAD = 4;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Fields
+        // -------------------------------------------------------------------------------------------------------------
+
+        private int mChunkSize;
+        private int mParallelism;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * State of a single parallel computation, shared by all the threads taking part in it.
+         * 
+         * @author Lorenzo Villani
+         */
+        private final class Fork implements Runnable
+        {
+                private final int mChunkCount;
+                private final int mChunkSize;
+                private final CountDownLatch mDone;
+                private final AtomicReference < Exception > mError;
+                private final AtomicInteger mNext;
+                private final List < Params > mParams;
+                private final Object[] mResults;
+
+                public Fork ( List < Params > params, int chunkSize )
+                {
+                        mChunkCount = ( params.size () + chunkSize - 1 ) / chunkSize;
+                        mChunkSize = chunkSize;
+                        mDone = new CountDownLatch ( mChunkCount );
+                        mError = new AtomicReference < Exception > ();
+                        mNext = new AtomicInteger ();
+                        mParams = params;
+                        mResults = new Object[mChunkCount];
+                }
+
+                /**
+                 * Claims and computes chunks until none is left. Chunks claimed after a failure or a cancellation are
+                 * skipped.
+                 */
+                @Override
+                public void run ()
+                {
+                        int chunk;
+
+                        while ( ( chunk = mNext.getAndIncrement () ) < mChunkCount )
+                        {
+                                try
+                                {
+                                        if ( mError.get () == null && !isCancelled () )
+                                        {
+                                                mResults[chunk] = computeChunk ( mParams.subList ( chunk * mChunkSize,
+                                                                Math.min ( mParams.size (), ( chunk + 1 ) * mChunkSize ) ) );
+                                        }
+                                }
+                                catch ( Exception ex )
+                                {
+                                        mError.compareAndSet ( null, ex );
+                                }
+                                finally
+                                {
+                                        mDone.countDown ();
+                                }
+                        }
+                }
+        }
+
+        /**
+         * A helper enlisted on the executor, carrying the priority of the task.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class Helper extends FutureTask < Void > implements Prioritized
+        {
+                private final TaskPriority mPriority;
+
+                public Helper ( Runnable fork, TaskPriority priority )
+                {
+                        super ( fork, null );
+
+                        mPriority = priority;
+                }
+
+                @Override
+                public TaskPriority getPriority ()
+                {
+                        return mPriority;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Constructor.
+         * 
+         * @since 0.0.1
+         */
+        public ParallelTask ()
+        {
+                super ();
+
+                mParallelism = Runtime.getRuntime ().availableProcessors ();
+        }
+
+        /**
+         * Constructor.
+         * 
+         * @param dispatcher Delivers callbacks of this task.
+         * @since 0.0.1
+         */
+        public ParallelTask ( Dispatcher dispatcher )
+        {
+                super ( dispatcher );
+
+                mParallelism = Runtime.getRuntime ().availableProcessors ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @return Amount of parameters per chunk, or <code>0</code> if picked automatically.
+         * @since 0.0.1
+         */
+        public int getChunkSize ()
+        {
+                return mChunkSize;
+        }
+
+        /**
+         * @return Maximum amount of threads working on a computation, including the worker thread of the task.
+         * @since 0.0.1
+         */
+        public int getParallelism ()
+        {
+                return mParallelism;
+        }
+
+        /**
+         * Sets how many parameters are processed by a single invocation of {@link #computeChunk(List)}. By default a
+         * few chunks per thread are created, use larger chunks when the work per parameter is tiny.
+         * 
+         * @param chunkSize Amount of parameters per chunk, or <code>0</code> to pick it automatically.
+         * @since 0.0.1
+         */
+        public void setChunkSize ( int chunkSize )
+        {
+                if ( chunkSize < 0 )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mChunkSize = chunkSize;
+        }
+
+        /**
+         * Sets the maximum amount of threads working on a computation. Defaults to the amount of available processors.
+         * 
+         * @param parallelism Amount of threads, including the worker thread of the task.
+         * @since 0.0.1
+         */
+        public void setParallelism ( int parallelism )
+        {
+                if ( parallelism < 1 )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mParallelism = parallelism;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Protected Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Merges the results of two adjacent chunks. Invoked in the worker thread of the task, in chunk order.
+         * 
+         * @param first Result of the preceding chunks.
+         * @param second Result of the following chunk.
+         * @return The combined result.
+         * @since 0.0.1
+         */
+        protected abstract Result combine ( Result first, Result second );
+
+        /**
+         * Processes a chunk of parameters. Invoked concurrently on several threads, implementations must not share
+         * mutable state without synchronization.
+         * 
+         * @param chunk A read-only view of consecutive parameters, never empty unless the task was executed without
+         *                parameters.
+         * @return The result of the chunk.
+         * @throws Exception Cancels the remaining chunks and is delivered to {@link #onCatchError(Throwable)}.
+         * @since 0.0.1
+         */
+        protected abstract Result computeChunk ( List < Params > chunk ) throws Exception;
+
+        /**
+         * Splits the parameters into chunks, computes them in parallel and combines their results.
+         */
+        @Override
+        @SuppressWarnings ( "unchecked" )
+        protected final Result doInBackground ( Params ... params ) throws Exception
+        {
+                Executor executor;
+                Fork fork;
+                Helper[] helpers;
+                List < Params > list;
+                Result result;
+                int chunkSize;
+
+                if ( params == null || params.length == 0 )
+                {
+                        return computeChunk ( Collections.< Params > emptyList () );
+                }
+
+                list = Arrays.asList ( params );
+                chunkSize = mChunkSize;
+
+                if ( chunkSize == 0 )
+                {
+                        chunkSize = Math.max ( 1, list.size () / ( mParallelism * CHUNKS_PER_THREAD ) );
+                }
+
+                fork = new Fork ( list, chunkSize );
+                executor = getExecutor ();
+                helpers = new Helper[Math.min ( mParallelism, fork.mChunkCount ) - 1];
+
+                for ( int i = 0; i < helpers.length; i++ )
+                {
+                        helpers[i] = new Helper ( fork, getPriority () );
+
+                        try
+                        {
+                                executor.execute ( helpers[i] );
+                        }
+                        catch ( RejectedExecutionException ex )
+                        {
+                                // Fewer helpers, the worker thread does the rest
+                                break;
+                        }
+                }
+
+                try
+                {
+                        fork.run ();
+                        fork.mDone.await ();
+                }
+                catch ( InterruptedException ex )
+                {
+                        // Cancelled, let helpers skip what is left
+                        fork.mError.compareAndSet ( null, ex );
+
+                        throw ex;
+                }
+                finally
+                {
+                        // Helpers which did not get a thread in time have nothing left to do
+                        for ( Helper helper : helpers )
+                        {
+                                if ( helper != null )
+                                {
+                                        AsyncTask.removeFromQueue ( executor, helper );
+                                }
+                        }
+                }
+
+                if ( fork.mError.get () != null )
+                {
+                        throw fork.mError.get ();
+                }
+
+                if ( isCancelled () )
+                {
+                        // Some chunks were skipped, the outcome is discarded anyway
+                        return null;
+                }
+
+                result = ( Result ) fork.mResults[0];
+
+                for ( int i = 1; i < fork.mResults.length; i++ )
+                {
+                        result = combine ( result, ( Result ) fork.mResults[i] );
+                }
+
+                return result;
+        }
+}
@@ -0,0 +1,370 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A chain of background computations which run back-to-back on a worker thread.
+ * <p>
+ * Pipelines are immutable descriptions of work: each operator returns a new pipeline and nothing runs until the
+ * pipeline is handed to a {@link PipelineTask}. All stages run on the worker thread of the task, so chaining stages
+ * never bounces through the UI thread; only the final result is delivered to the UI thread.
+ * </p>
+ * 
+ * <pre>
+ * new PipelineTask &lt; Bitmap &gt; ( Pipeline.from ( download ).map ( decode ).onError ( placeholder ) )
+ * {
+ *         protected void onFinish ( Bitmap result )
+ *         {
+ *                 imageView.setImageBitmap ( result );
+ *         }
+ * }.execute ();
+ * </pre>
+ * 
+ * @author Lorenzo Villani
+ * @param <T> The type of the result of this pipeline.
+ * @see PipelineTask
+ * @since 0.0.1
+ */
+public abstract class Pipeline < T >
+{
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Transforms a value into another one.
+         * 
+         * @author Lorenzo Villani
+         * @param <From> The type of the input value.
+         * @param <To> The type of the output value.
+         */
+        public interface Function < From, To >
+        {
+                To apply ( From value ) throws Exception;
+        }
+
+        /**
+         * Combines two values into a third one.
+         * 
+         * @author Lorenzo Villani
+         * @param <First> The type of the first value.
+         * @param <Second> The type of the second value.
+         * @param <To> The type of the output value.
+         */
+        public interface Combiner < First, Second, To >
+        {
+                To combine ( First first, Second second ) throws Exception;
+        }
+
+        /**
+         * A pipeline running in parallel on the executor, carrying the priority of the task.
+         * 
+         * @author Lorenzo Villani
+         * @param <V> The type of the result of the pipeline.
+         */
+        private static final class Helper < V > extends FutureTask < V > implements Prioritized
+        {
+                private final TaskPriority mPriority;
+
+                public Helper ( Callable < V > callable, TaskPriority priority )
+                {
+                        super ( callable );
+
+                        mPriority = priority;
+                }
+
+                @Override
+                public TaskPriority getPriority ()
+                {
+                        return mPriority;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Static Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Creates a pipeline whose first stage is the given computation.
+         * 
+         * @param callable The first stage.
+         * @return A new pipeline.
+         * @since 0.0.1
+         */
+        public static < T > Pipeline < T > from ( final Callable < T > callable )
+        {
+                return new Pipeline < T > ()
+                {
+                        @Override
+                        T compute ( Executor executor, TaskPriority priority ) throws Exception
+                        {
+                                return callable.call ();
+                        }
+                };
+        }
+
+        /**
+         * Creates a pipeline which starts with an already known value.
+         * 
+         * @param value The value.
+         * @return A new pipeline.
+         * @since 0.0.1
+         */
+        public static < T > Pipeline < T > just ( final T value )
+        {
+                return new Pipeline < T > ()
+                {
+                        @Override
+                        T compute ( Executor executor, TaskPriority priority )
+                        {
+                                return value;
+                        }
+                };
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Replaces the result of this pipeline with the result of another pipeline, computed with the result of this
+         * one. The other pipeline runs on the same worker thread.
+         * 
+         * @param function Creates the pipeline to continue with.
+         * @return A new pipeline.
+         * @since 0.0.1
+         */
+        public < R > Pipeline < R > flatMap ( final Function < ? super T, Pipeline < R > > function )
+        {
+                final Pipeline < T > upstream = this;
+
+                return new Pipeline < R > ()
+                {
+                        @Override
+                        R compute ( Executor executor, TaskPriority priority ) throws Exception
+                        {
+                                return function.apply ( upstream.compute ( executor, priority ) ).compute ( executor,
+                                                priority );
+                        }
+                };
+        }
+
+        /**
+         * Transforms the result of this pipeline.
+         * 
+         * @param function The transformation.
+         * @return A new pipeline.
+         * @since 0.0.1
+         */
+        public < R > Pipeline < R > map ( final Function < ? super T, ? extends R > function )
+        {
+                final Pipeline < T > upstream = this;
+
+                return new Pipeline < R > ()
+                {
+                        @Override
+                        R compute ( Executor executor, TaskPriority priority ) throws Exception
+                        {
+                                return function.apply ( upstream.compute ( executor, priority ) );
+                        }
+                };
+        }
+
+        /**
+         * Recovers from a failure of this pipeline (or of any of its stages) by computing a fallback result.
+         * 
+         * @param function Computes the fallback result from the error.
+         * @return A new pipeline.
+         * @since 0.0.1
+         */
+        public Pipeline < T > onError ( final Function < Exception, ? extends T > function )
+        {
+                final Pipeline < T > upstream = this;
+
+                return new Pipeline < T > ()
+                {
+                        @Override
+                        T compute ( Executor executor, TaskPriority priority ) throws Exception
+                        {
+                                try
+                                {
+                                        return upstream.compute ( executor, priority );
+                                }
+                                catch ( InterruptedException ex )
+                                {
+                                        throw ex;
+                                }
+                                catch ( Exception ex )
+                                {
+                                        return function.apply ( ex );
+                                }
+                        }
+                };
+        }
+
+        /**
+         * Runs another computation once this pipeline completed, discarding the result of this pipeline.
+         * 
+         * @param callable The next stage.
+         * @return A new pipeline.
+         * @since 0.0.1
+         */
+        public < R > Pipeline < R > then ( final Callable < R > callable )
+        {
+                final Pipeline < T > upstream = this;
+
+                return new Pipeline < R > ()
+                {
+                        @Override
+                        R compute ( Executor executor, TaskPriority priority ) throws Exception
+                        {
+                                upstream.compute ( executor, priority );
+
+                                return callable.call ();
+                        }
+                };
+        }
+
+        /**
+         * Combines the result of this pipeline with the result of another one.
+         * <p>
+         * The other pipeline is submitted to the executor of the task, with the priority of the task, and runs in
+         * parallel with this one. If it did not start by the time this pipeline completed, or if the executor rejected
+         * or discarded it, it runs on the current worker thread instead, so that a saturated executor can't dead-lock.
+         * </p>
+         * 
+         * @param other The other pipeline.
+         * @param combiner Combines both results.
+         * @return A new pipeline.
+         * @since 0.0.1
+         */
+        public < U, R > Pipeline < R > zip ( final Pipeline < U > other,
+                        final Combiner < ? super T, ? super U, ? extends R > combiner )
+        {
+                final Pipeline < T > upstream = this;
+
+                return new Pipeline < R > ()
+                {
+                        @Override
+                        R compute ( final Executor executor, final TaskPriority priority ) throws Exception
+                        {
+                                Helper < U > future;
+                                T first;
+                                U second;
+
+                                future = new Helper < U > ( new Callable < U > ()
+                                {
+                                        @Override
+                                        public U call () throws Exception
+                                        {
+                                                return other.compute ( executor, priority );
+                                        }
+                                }, priority );
+
+                                try
+                                {
+                                        executor.execute ( future );
+                                }
+                                catch ( RejectedExecutionException ex )
+                                {
+                                        // Run below, on this worker thread
+                                }
+
+                                try
+                                {
+                                        first = upstream.compute ( executor, priority );
+
+                                        // Does nothing if the other pipeline already started somewhere else
+                                        future.run ();
+
+                                        if ( future.isCancelled () )
+                                        {
+                                                // Discarded by a bounded executor before it could start
+                                                second = other.compute ( executor, priority );
+                                        }
+                                        else
+                                        {
+                                                second = future.get ();
+                                        }
+
+                                        return combiner.combine ( first, second );
+                                }
+                                catch ( ExecutionException ex )
+                                {
+                                        throw unwrap ( ex );
+                                }
+                                finally
+                                {
+                                        if ( future.cancel ( true ) )
+                                        {
+                                                AsyncTask.removeFromQueue ( executor, future );
+                                        }
+                                }
+                        }
+                };
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Package-private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Computes the result of this pipeline in the calling thread.
+         * 
+         * @param executor Executor used by stages which run in parallel.
+         * @param priority Priority of the stages which run in parallel.
+         * @return The result of this pipeline.
+         * @throws Exception
+         */
+        abstract T compute ( Executor executor, TaskPriority priority ) throws Exception;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Extracts the original failure of a computation.
+         * 
+         * @param ex
+         * @return
+         */
+        private static Exception unwrap ( ExecutionException ex )
+        {
+                Throwable cause;
+
+                cause = ex.getCause ();
+
+                if ( cause instanceof Exception )
+                {
+                        return ( Exception ) cause;
+                }
+                else if ( cause instanceof Error )
+                {
+                        throw ( Error ) cause;
+                }
+                else
+                {
+                        return ex;
+                }
+        }
+}
@@ -0,0 +1,54 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+/**
+ * An {@link AsyncTask} which runs a {@link Pipeline} and delivers its final result to the UI thread.
+ * <p>
+ * Override {@link #onFinish(Object)} and the other callbacks as with any other {@link AsyncTask}. All stages of the
+ * pipeline run on the worker thread of this task, no matter how many of them there are.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @param <Result> The type of the result of the pipeline.
+ * @see Pipeline
+ * @since 0.0.1
+ */
+public class PipelineTask < Result > extends AsyncTask < Void, Result >
+{
+        private Pipeline < Result > mPipeline;
+
+        /**
+         * @param pipeline The pipeline to run.
+         * @since 0.0.1
+         */
+        public PipelineTask ( Pipeline < Result > pipeline )
+        {
+                super ();
+
+                mPipeline = pipeline;
+        }
+
+        /**
+         * Runs all stages of the pipeline.
+         */
+        @Override
+        protected Result doInBackground ( Void ... params ) throws Exception
+        {
+                return mPipeline.compute ( getExecutor (), getPriority () );
+        }
+}
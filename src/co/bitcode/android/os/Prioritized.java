@@ -0,0 +1,36 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+/**
+ * Implemented by units of work which carry a {@link TaskPriority}.
+ * <p>
+ * A {@link PriorityExecutor} uses this interface to decide which of the waiting tasks should run first. Runnables which
+ * do not implement it are considered to have {@link TaskPriority#VISIBLE} priority.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @since 0.0.1
+ */
+public interface Prioritized
+{
+        /**
+         * @return The priority class of this unit of work.
+         * @since 0.0.1
+         */
+        TaskPriority getPriority ();
+}
@@ -0,0 +1,471 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Process;
+
+/**
+ * A thread pool which starts waiting tasks according to their {@link TaskPriority}.
+ * <p>
+ * Tasks implementing {@link Prioritized} are ordered by priority class first and by submission order second, so that a
+ * burst of low priority work can't starve a more urgent task queued behind it. Worker threads are named after the pool
+ * and run with background scheduling priority, leaving the UI thread as responsive as possible.
+ * </p>
+ * <p>
+ * Within a priority class tasks are started in submission order by default. Pools created with {@link Order#LIFO}
+ * start the most recently submitted task first instead, which suits scroll-driven loads where the latest request is
+ * the one on screen. The queue can also be bounded with {@link #setCapacity(int, OverflowPolicy)}.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setDefaultExecutor(java.util.concurrent.Executor)
+ * @since 0.0.1
+ */
+public class PriorityExecutor extends ThreadPoolExecutor
+{
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Default amount of worker threads, derived from the number of available cores.
+         */
+        public static final int DEFAULT_POOL_SIZE = Math.max ( 2, Runtime.getRuntime ().availableProcessors () + 1 );
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        private static final long KEEP_ALIVE_SECONDS = 30;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Fields
+        // -------------------------------------------------------------------------------------------------------------
+
+        private volatile int mCapacity;
+        private final Object mCapacityLock;
+        private final boolean mLifo;
+        private volatile OverflowPolicy mOverflowPolicy;
+        private final AtomicLong mSequence;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Order in which tasks of the same priority class are started.
+         * 
+         * @author Lorenzo Villani
+         */
+        public enum Order
+        {
+                /**
+                 * The task submitted first is started first.
+                 */
+                FIFO,
+
+                /**
+                 * The task submitted last is started first.
+                 */
+                LIFO;
+        }
+
+        /**
+         * What to do when a task is submitted to a pool whose queue is full.
+         * 
+         * @author Lorenzo Villani
+         * @see PriorityExecutor#setCapacity(int, OverflowPolicy)
+         */
+        public enum OverflowPolicy
+        {
+                /**
+                 * Throw a {@link RejectedExecutionException}.
+                 */
+                REJECT,
+
+                /**
+                 * Run the task in the thread which submitted it. Beware that this is usually the UI thread.
+                 */
+                CALLER_RUNS,
+
+                /**
+                 * Discard the oldest task of the least urgent priority class, which may be the submitted task itself.
+                 * Discarded tasks implementing {@link Future} are cancelled.
+                 */
+                DROP_OLDEST;
+        }
+
+        /**
+         * Queue entry which remembers the priority and the submission order of the wrapped task.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class Entry implements Runnable, Comparable < Entry >
+        {
+                private final Runnable mCommand;
+                private final long mOrder;
+                private final TaskPriority mPriority;
+                private final long mSequence;
+
+                public Entry ( Runnable command, TaskPriority priority, long sequence, boolean lifo )
+                {
+                        mCommand = command;
+                        mOrder = lifo ? -sequence : sequence;
+                        mPriority = priority;
+                        mSequence = sequence;
+                }
+
+                @Override
+                public int compareTo ( Entry another )
+                {
+                        int result;
+
+                        result = mPriority.compareTo ( another.mPriority );
+
+                        if ( result == 0 )
+                        {
+                                result = mOrder < another.mOrder ? -1 : ( mOrder > another.mOrder ? 1 : 0 );
+                        }
+
+                        return result;
+                }
+
+                /**
+                 * @param another
+                 * @return Whether this entry should be discarded before the other one.
+                 */
+                public boolean isStalerThan ( Entry another )
+                {
+                        int result;
+
+                        result = mPriority.compareTo ( another.mPriority );
+
+                        return result > 0 || ( result == 0 && mSequence < another.mSequence );
+                }
+
+                @Override
+                public void run ()
+                {
+                        mCommand.run ();
+                }
+        }
+
+        /**
+         * Creates named worker threads which run with background scheduling priority.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class BackgroundThreadFactory implements ThreadFactory
+        {
+                private final AtomicInteger mCount;
+                private final String mName;
+
+                public BackgroundThreadFactory ( String name )
+                {
+                        mCount = new AtomicInteger ( 1 );
+                        mName = name;
+                }
+
+                @Override
+                public Thread newThread ( final Runnable runnable )
+                {
+                        return new Thread ( new Runnable ()
+                        {
+                                @Override
+                                public void run ()
+                                {
+                                        Process.setThreadPriority ( Process.THREAD_PRIORITY_BACKGROUND );
+
+                                        runnable.run ();
+                                }
+                        }, mName + " #" + mCount.getAndIncrement () );
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Creates a pool of {@link #DEFAULT_POOL_SIZE} threads.
+         * 
+         * @param name Name prefix of worker threads.
+         * @since 0.0.1
+         */
+        public PriorityExecutor ( String name )
+        {
+                this ( name, DEFAULT_POOL_SIZE );
+        }
+
+        /**
+         * Creates a pool with a fixed amount of threads.
+         * 
+         * @param name Name prefix of worker threads.
+         * @param poolSize Amount of worker threads.
+         * @since 0.0.1
+         */
+        public PriorityExecutor ( String name, int poolSize )
+        {
+                this ( name, poolSize, Order.FIFO );
+        }
+
+        /**
+         * Creates a pool with a fixed amount of threads.
+         * 
+         * @param name Name prefix of worker threads.
+         * @param poolSize Amount of worker threads.
+         * @param order Order in which tasks of the same priority class are started.
+         * @since 0.0.1
+         */
+        public PriorityExecutor ( String name, int poolSize, Order order )
+        {
+                super ( poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue < Runnable > (),
+                                new BackgroundThreadFactory ( name ) );
+
+                mCapacityLock = new Object ();
+                mLifo = order == Order.LIFO;
+                mOverflowPolicy = OverflowPolicy.REJECT;
+                mSequence = new AtomicLong ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Schedules a task. Tasks not implementing {@link Prioritized} are given {@link TaskPriority#VISIBLE} priority.
+         */
+        @Override
+        public void execute ( Runnable command )
+        {
+                Entry entry;
+                TaskPriority priority;
+
+                if ( command == null )
+                {
+                        throw new NullPointerException ();
+                }
+
+                if ( command instanceof Prioritized )
+                {
+                        priority = ( ( Prioritized ) command ).getPriority ();
+                }
+                else
+                {
+                        priority = TaskPriority.VISIBLE;
+                }
+
+                entry = new Entry ( command, priority, mSequence.getAndIncrement (), mLifo );
+
+                if ( mCapacity <= 0 )
+                {
+                        super.execute ( entry );
+
+                        return;
+                }
+
+                synchronized ( mCapacityLock )
+                {
+                        if ( getQueue ().size () < mCapacity )
+                        {
+                                super.execute ( entry );
+
+                                return;
+                        }
+
+                        switch ( mOverflowPolicy )
+                        {
+                        case CALLER_RUNS:
+                                break;
+                        case DROP_OLDEST:
+                                discard ( evict ( entry ) );
+
+                                return;
+                        default:
+                                throw new RejectedExecutionException ( "Queue is full" );
+                        }
+                }
+
+                // Caller runs, outside of the lock
+                entry.run ();
+        }
+
+        /**
+         * @return Maximum amount of waiting tasks, or <code>0</code> if unbounded.
+         * @since 0.0.1
+         */
+        public int getCapacity ()
+        {
+                return mCapacity;
+        }
+
+        /**
+         * @return What happens when the queue is full.
+         * @since 0.0.1
+         */
+        public OverflowPolicy getOverflowPolicy ()
+        {
+                return mOverflowPolicy;
+        }
+
+        /**
+         * Moves a task which has not been started yet ahead of less urgent tasks, for example because the user is now
+         * waiting for its result. Its position among tasks of the new priority class is the one given by its
+         * submission order.
+         * 
+         * @param task The task.
+         * @param priority The new priority, ignored unless more urgent than the current one.
+         * @return Whether the task was waiting and has been moved.
+         * @since 0.0.1
+         */
+        public boolean raisePriority ( Runnable task, TaskPriority priority )
+        {
+                Entry entry;
+                Entry raised;
+
+                raised = null;
+
+                synchronized ( mCapacityLock )
+                {
+                        for ( Runnable queued : getQueue () )
+                        {
+                                entry = ( Entry ) queued;
+
+                                if ( entry.mCommand == task )
+                                {
+                                        if ( priority.compareTo ( entry.mPriority ) < 0 && super.remove ( entry ) )
+                                        {
+                                                raised = new Entry ( task, priority, entry.mSequence, mLifo );
+                                        }
+
+                                        break;
+                                }
+                        }
+
+                        if ( raised == null )
+                        {
+                                return false;
+                        }
+
+                        try
+                        {
+                                super.execute ( raised );
+                        }
+                        catch ( RejectedExecutionException ex )
+                        {
+                                // Shut down in the meantime
+                                discard ( raised );
+
+                                return false;
+                        }
+                }
+
+                return true;
+        }
+
+        /**
+         * Removes a task which has not been started yet from the queue.
+         */
+        @Override
+        public boolean remove ( Runnable task )
+        {
+                for ( Runnable queued : getQueue () )
+                {
+                        if ( ( ( Entry ) queued ).mCommand == task )
+                        {
+                                return super.remove ( queued );
+                        }
+                }
+
+                return false;
+        }
+
+        /**
+         * Bounds the amount of tasks waiting for a worker thread.
+         * 
+         * @param capacity Maximum amount of waiting tasks, or <code>0</code> for an unbounded queue.
+         * @param policy What to do when a task is submitted while the queue is full.
+         * @since 0.0.1
+         */
+        public void setCapacity ( int capacity, OverflowPolicy policy )
+        {
+                if ( capacity < 0 || policy == null )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mOverflowPolicy = policy;
+                mCapacity = capacity;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Cancels a discarded task, so that its owner gets notified.
+         * 
+         * @param entry
+         */
+        private static void discard ( Entry entry )
+        {
+                if ( entry != null && entry.mCommand instanceof Future )
+                {
+                        ( ( Future < ? > ) entry.mCommand ).cancel ( false );
+                }
+        }
+
+        /**
+         * Makes room for a new task. Must be called while holding {@link #mCapacityLock}.
+         * 
+         * @param entry The task being submitted.
+         * @return The discarded task, if any.
+         */
+        private Entry evict ( Entry entry )
+        {
+                Entry victim;
+
+                victim = entry;
+
+                for ( Runnable queued : getQueue () )
+                {
+                        if ( ( ( Entry ) queued ).isStalerThan ( victim ) )
+                        {
+                                victim = ( Entry ) queued;
+                        }
+                }
+
+                if ( victim == entry )
+                {
+                        return entry;
+                }
+
+                super.execute ( entry );
+
+                // The victim may have been started in the meantime
+                return super.remove ( victim ) ? victim : null;
+        }
+}
@@ -48,6 +48,24 @@ public abstract class ProgressDialogTask < Params, Result > extends AsyncTask <
          * @see #setCancelable(boolean)
          */
         public ProgressDialogTask ( Context context, int messageId )
+        {
+                this ( context, messageId, false );
+        }
+
+        /**
+         * Constructs a new task which shows a {@link ProgressDialog} while executing.
+         * <p>
+         * A determinate {@link ProgressDialog} shows a progress bar driven by
+         * {@link #publishProgress(int, int)}.
+         * </p>
+         * 
+         * @param context Parent context.
+         * @param messageId String ID of the message to show in the progress dialog.
+         * @param determinate Whether the {@link ProgressDialog} shows the amount of work done.
+         * @since 0.0.1
+         * @see #ProgressDialogTask(Context, int)
+         */
+        public ProgressDialogTask ( Context context, int messageId, boolean determinate )
         {
                 mContext = context;
 
@@ -55,12 +73,19 @@ public abstract class ProgressDialogTask < Params, Result > extends AsyncTask <
                 mProgressDialog.setCancelable ( false );
                 mProgressDialog.setOnCancelListener ( this );
                 mProgressDialog.setMessage ( context.getResources ().getString ( messageId ) );
+
+                if ( determinate )
+                {
+                        mProgressDialog.setProgressStyle ( ProgressDialog.STYLE_HORIZONTAL );
+                        mProgressDialog.setIndeterminate ( false );
+                }
         }
 
         /**
          * Invoked when the user cancels tries to dismiss the {@link ProgressDialog}.
          * <p>
-         * By default it will attempt to cancel this <code>ProgressDialogTask</code>
+         * By default it will attempt to cancel this <code>ProgressDialogTask</code>, interrupting the background
+         * computation.
          * </p>
          * 
          * @since 0.0.1
@@ -68,7 +93,7 @@ public abstract class ProgressDialogTask < Params, Result > extends AsyncTask <
         @Override
         public void onCancel ( DialogInterface dialog )
         {
-                // cancel(true);
+                cancel ( true );
         }
 
         //
@@ -92,15 +117,37 @@ public abstract class ProgressDialogTask < Params, Result > extends AsyncTask <
 
         /**
          * {@inheritDoc}
+         * <p>
+         * Dismisses the {@link ProgressDialog} whether the task finished, failed or has been cancelled.
+         * </p>
          */
         @Override
-        protected void onFinish ( Result result )
+        protected void onFinalize ()
         {
-                super.onFinish ( result );
+                super.onFinalize ();
 
                 mProgressDialog.dismiss ();
         }
 
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Updates the progress bar of a determinate {@link ProgressDialog}.
+         * </p>
+         */
+        @Override
+        protected void onProgress ( int value, int max )
+        {
+                super.onProgress ( value, max );
+
+                if ( mProgressDialog.getMax () != max )
+                {
+                        mProgressDialog.setMax ( max );
+                }
+
+                mProgressDialog.setProgress ( value );
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -0,0 +1,195 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe cache of {@link AsyncTask} results.
+ * <p>
+ * Entries are evicted in least-recently-used order once the cache holds its maximum amount of entries, and expire
+ * after a fixed time to live. A cache is usually shared by all instances of a task class, for example through a static
+ * field.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @param <Result> The type of cached results.
+ * @see AsyncTask#setResultCache(ResultCache)
+ * @since 0.0.1
+ */
+public class ResultCache < Result >
+{
+        private final LinkedHashMap < Object, Entry < Result > > mEntries;
+        private final int mMaxEntries;
+        private final long mTimeToLiveMillis;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * A cached result along with its expiration time.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class Entry < Result >
+        {
+                private final long mExpiration;
+                private final Result mResult;
+
+                public Entry ( Result result, long expiration )
+                {
+                        mExpiration = expiration;
+                        mResult = result;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param maxEntries Maximum amount of cached results.
+         * @param timeToLiveMillis How long results stay valid, or <code>0</code> if they never expire.
+         * @since 0.0.1
+         */
+        public ResultCache ( int maxEntries, long timeToLiveMillis )
+        {
+                if ( maxEntries < 1 || timeToLiveMillis < 0 )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mEntries = new LinkedHashMap < Object, Entry < Result > > ( 16, 0.75f, true );
+                mMaxEntries = maxEntries;
+                mTimeToLiveMillis = timeToLiveMillis;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Discards all cached results.
+         * 
+         * @since 0.0.1
+         */
+        public synchronized void clear ()
+        {
+                mEntries.clear ();
+        }
+
+        /**
+         * Looks up a result.
+         * 
+         * @param key Cache key.
+         * @return The cached result, or <code>null</code> if missing or expired.
+         * @since 0.0.1
+         */
+        public synchronized Result get ( Object key )
+        {
+                Entry < Result > entry;
+
+                entry = mEntries.get ( key );
+
+                if ( entry == null )
+                {
+                        return null;
+                }
+
+                if ( isExpired ( entry, AsyncTask.uptimeMillis () ) )
+                {
+                        mEntries.remove ( key );
+
+                        return null;
+                }
+
+                return entry.mResult;
+        }
+
+        /**
+         * Stores a result, evicting expired and least recently used results as needed.
+         * 
+         * @param key Cache key.
+         * @param result The result, <code>null</code> results are not cached.
+         * @since 0.0.1
+         */
+        public synchronized void put ( Object key, Result result )
+        {
+                Iterator < Map.Entry < Object, Entry < Result > > > iterator;
+                long now;
+
+                if ( result == null )
+                {
+                        return;
+                }
+
+                now = AsyncTask.uptimeMillis ();
+
+                mEntries.put ( key, new Entry < Result > ( result, mTimeToLiveMillis > 0 ? now + mTimeToLiveMillis
+                                : Long.MAX_VALUE ) );
+
+                iterator = mEntries.entrySet ().iterator ();
+
+                while ( iterator.hasNext () )
+                {
+                        Entry < Result > entry;
+
+                        entry = iterator.next ().getValue ();
+
+                        if ( mEntries.size () > mMaxEntries || isExpired ( entry, now ) )
+                        {
+                                iterator.remove ();
+                        }
+                        else
+                        {
+                                break;
+                        }
+                }
+        }
+
+        /**
+         * Discards a cached result.
+         * 
+         * @param key Cache key.
+         * @since 0.0.1
+         */
+        public synchronized void remove ( Object key )
+        {
+                mEntries.remove ( key );
+        }
+
+        /**
+         * @return Amount of cached results, including expired ones which have not been evicted yet.
+         * @since 0.0.1
+         */
+        public synchronized int size ()
+        {
+                return mEntries.size ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        private static boolean isExpired ( Entry < ? > entry, long now )
+        {
+                return now >= entry.mExpiration;
+        }
+}
@@ -0,0 +1,107 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Describes how an {@link AsyncTask} retries a failed computation.
+ * <p>
+ * Retries are delayed with exponential backoff and full jitter: the n-th retry waits a random amount of time between
+ * zero and <code>initialDelay * 2^(n-1)</code>, capped to the maximum delay. Waiting happens on a timer, not on a
+ * worker thread. By default only {@link IOException}s are considered transient, override
+ * {@link #isRetryable(Exception)} to change that.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setRetryPolicy(RetryPolicy)
+ * @since 0.0.1
+ */
+public class RetryPolicy
+{
+        private static final Random RANDOM = new Random ();
+
+        private long mInitialDelayMillis;
+        private int mMaxAttempts;
+        private long mMaxDelayMillis;
+
+        /**
+         * @param maxAttempts Maximum amount of times the computation is run, including the first one.
+         * @param initialDelayMillis Upper bound of the delay before the first retry.
+         * @param maxDelayMillis Upper bound of the delay before any retry.
+         * @since 0.0.1
+         */
+        public RetryPolicy ( int maxAttempts, long initialDelayMillis, long maxDelayMillis )
+        {
+                if ( maxAttempts < 1 || initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mInitialDelayMillis = initialDelayMillis;
+
+                mMaxAttempts = maxAttempts;
+
+                mMaxDelayMillis = maxDelayMillis;
+        }
+
+        /**
+         * Computes how long to wait before a retry.
+         * 
+         * @param retry Number of the retry, starting from 1.
+         * @return Delay in milliseconds.
+         * @since 0.0.1
+         */
+        public long getDelay ( int retry )
+        {
+                long ceiling;
+
+                ceiling = mMaxDelayMillis;
+
+                if ( retry - 1 < Long.numberOfLeadingZeros ( mInitialDelayMillis ) - 1 )
+                {
+                        ceiling = Math.min ( ceiling, mInitialDelayMillis << ( retry - 1 ) );
+                }
+
+                return ( long ) ( RANDOM.nextDouble () * ceiling );
+        }
+
+        /**
+         * @return Maximum amount of times the computation is run, including the first one.
+         * @since 0.0.1
+         */
+        public int getMaxAttempts ()
+        {
+                return mMaxAttempts;
+        }
+
+        /**
+         * Decides whether a failure is transient and worth a retry.
+         * <p>
+         * The default implementation returns <code>true</code> for {@link IOException}s.
+         * </p>
+         * 
+         * @param ex The failure.
+         * @return <code>true</code> if the computation should be retried.
+         * @since 0.0.1
+         */
+        public boolean isRetryable ( Exception ex )
+        {
+                return ex instanceof IOException;
+        }
+}
@@ -0,0 +1,340 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.os;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks sharing a serialization key one at a time, in submission order, on top of another {@link Executor}.
+ * <p>
+ * Keys are hashed onto a fixed set of lanes, so memory does not grow with the amount of distinct keys. Each lane hands
+ * at most one task at a time to the underlying executor, while different lanes run in parallel. Unrelated keys hashed
+ * onto the same lane are serialized too, which costs some parallelism but never correctness.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setSerializationKey(Object)
+ */
+final class SerialExecutor implements Executor
+{
+        private static final int LANE_COUNT = 64;
+        private static final Lane[] LANES = new Lane[LANE_COUNT];
+
+        private final Executor mExecutor;
+        private final Lane mLane;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * A FIFO of tasks, at most one of which is submitted to its executor at any time.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class Lane
+        {
+                private boolean mActive;
+                private Turn mCurrent;
+                private Runnable mHeldFor;
+                private final LinkedList < Turn > mQueue;
+
+                public Lane ()
+                {
+                        mQueue = new LinkedList < Turn > ();
+                }
+
+                /**
+                 * Queues a task, or submits it right away if the lane is idle.
+                 * 
+                 * @param turn
+                 * @throws RejectedExecutionException If the lane was idle and the executor rejected the task.
+                 */
+                public void enqueue ( Turn turn )
+                {
+                        synchronized ( this )
+                        {
+                                if ( mHeldFor != null && mHeldFor == turn.mCommand )
+                                {
+                                        // A retry taking back the lane kept by its failed attempt
+                                        mHeldFor = null;
+                                }
+                                else if ( mActive )
+                                {
+                                        mQueue.add ( turn );
+
+                                        return;
+                                }
+
+                                mActive = true;
+                                mCurrent = turn;
+                        }
+
+                        try
+                        {
+                                turn.mExecutor.execute ( turn );
+                        }
+                        catch ( RejectedExecutionException ex )
+                        {
+                                // The submitter gets the error, the lane moves on
+                                advance ();
+
+                                throw ex;
+                        }
+                }
+
+                /**
+                 * Submits the next waiting task, if any. Called once the previous one is done.
+                 */
+                public void advance ()
+                {
+                        Turn next;
+
+                        synchronized ( this )
+                        {
+                                next = mQueue.poll ();
+                                mCurrent = next;
+
+                                if ( next == null )
+                                {
+                                        mActive = false;
+
+                                        return;
+                                }
+                        }
+
+                        try
+                        {
+                                next.mExecutor.execute ( next );
+                        }
+                        catch ( RejectedExecutionException ex )
+                        {
+                                // Nobody is left to report the error to, cancel the task and skip to the next one
+                                next.cancel ( false );
+                        }
+                }
+
+                /**
+                 * Keeps the lane for another task once the running one is done, instead of moving on.
+                 * 
+                 * @param command The running task.
+                 * @param successor The task which takes over the lane when submitted.
+                 * @return <code>false</code> if the running task does not hold this lane.
+                 */
+                public synchronized boolean hold ( Runnable command, Runnable successor )
+                {
+                        if ( mCurrent == null || mCurrent.mCommand != command )
+                        {
+                                return false;
+                        }
+
+                        mCurrent = null;
+                        mHeldFor = successor;
+
+                        return true;
+                }
+
+                /**
+                 * Moves on once the task holding the lane is done.
+                 * 
+                 * @param turn
+                 */
+                public void release ( Turn turn )
+                {
+                        synchronized ( this )
+                        {
+                                if ( mCurrent != turn )
+                                {
+                                        return;
+                                }
+                        }
+
+                        advance ();
+                }
+
+                /**
+                 * Removes a task which has not started yet, either waiting in the lane or already handed to its
+                 * executor.
+                 * 
+                 * @param command
+                 * @return Whether the task has been removed.
+                 */
+                public boolean remove ( Runnable command )
+                {
+                        Iterator < Turn > iterator;
+                        Turn current;
+                        boolean held;
+
+                        synchronized ( this )
+                        {
+                                iterator = mQueue.iterator ();
+
+                                while ( iterator.hasNext () )
+                                {
+                                        if ( iterator.next ().mCommand == command )
+                                        {
+                                                iterator.remove ();
+
+                                                return true;
+                                        }
+                                }
+
+                                held = mHeldFor != null && mHeldFor == command;
+                                current = mCurrent;
+
+                                if ( held )
+                                {
+                                        mHeldFor = null;
+                                }
+                        }
+
+                        if ( held )
+                        {
+                                // Cancelled while waiting to retry
+                                advance ();
+
+                                return true;
+                        }
+
+                        if ( current == null || current.mCommand != command || !current.cancel ( false ) )
+                        {
+                                return false;
+                        }
+
+                        // Give the slot back to the executor, the lane moves on as the turn is done
+                        AsyncTask.removeFromQueue ( current.mExecutor, current );
+
+                        return true;
+                }
+        }
+
+        /**
+         * Wraps a task while it holds its lane. The lane is released when the task completes or is cancelled, for
+         * example when a bounded {@link PriorityExecutor} discards it.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class Turn extends FutureTask < Void > implements Prioritized
+        {
+                private final Runnable mCommand;
+                private final Executor mExecutor;
+                private final Lane mLane;
+
+                public Turn ( Runnable command, Executor executor, Lane lane )
+                {
+                        super ( command, null );
+
+                        mCommand = command;
+                        mExecutor = executor;
+                        mLane = lane;
+                }
+
+                @Override
+                public TaskPriority getPriority ()
+                {
+                        if ( mCommand instanceof Prioritized )
+                        {
+                                return ( ( Prioritized ) mCommand ).getPriority ();
+                        }
+
+                        return TaskPriority.VISIBLE;
+                }
+
+                @Override
+                protected void done ()
+                {
+                        if ( isCancelled () && mCommand instanceof FutureTask )
+                        {
+                                ( ( FutureTask < ? > ) mCommand ).cancel ( false );
+                        }
+
+                        mLane.release ( this );
+                }
+        }
+
+        static
+        {
+                for ( int i = 0; i < LANE_COUNT; i++ )
+                {
+                        LANES[i] = new Lane ();
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param key Serialization key.
+         * @param executor The executor which actually runs tasks.
+         */
+        public SerialExecutor ( Object key, Executor executor )
+        {
+                int hash;
+
+                hash = key.hashCode ();
+                hash ^= ( hash >>> 20 ) ^ ( hash >>> 12 );
+                hash ^= ( hash >>> 7 ) ^ ( hash >>> 4 );
+
+                mExecutor = executor;
+                mLane = LANES[hash & ( LANE_COUNT - 1 )];
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        @Override
+        public void execute ( Runnable command )
+        {
+                if ( command == null )
+                {
+                        throw new NullPointerException ();
+                }
+
+                mLane.enqueue ( new Turn ( command, mExecutor, mLane ) );
+        }
+
+        /**
+         * Keeps the lane of a running task for its retry, so that tasks submitted in the meantime can't overtake it.
+         * The lane is released once the retry is done or removed.
+         * 
+         * @param command The running task.
+         * @param retry The task which takes over the lane once submitted to this executor.
+         * @return <code>false</code> if the running task does not hold its lane, the retry then queues up as usual.
+         */
+        public boolean hold ( Runnable command, Runnable retry )
+        {
+                return mLane.hold ( command, retry );
+        }
+
+        /**
+         * Removes a task which has not started yet, giving up its turn right away.
+         * 
+         * @param command
+         * @return Whether the task has been removed.
+         */
+        public boolean remove ( Runnable command )
+        {
+                return mLane.remove ( command );
+        }
+}
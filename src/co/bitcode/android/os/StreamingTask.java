@@ -0,0 +1,173 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link AsyncTask} which delivers items to the UI thread while its background computation is still running.
+ * <p>
+ * Items published with {@link #publishPartialResult(Object)} are batched and handed to
+ * {@link #onPartialResult(List)} at most once per frame interval, so that the UI thread is not flooded with one message
+ * per item. All published items are delivered before {@link #onFinish(Object)}. Items still pending when the task is
+ * cancelled are dropped.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @param <Params> The type of the parameters passed to this computation.
+ * @param <Item> The type of the items published while computing.
+ * @param <Result> The type of the result returned by this computation, usually {@link Void}.
+ * @since 0.0.1
+ */
+public abstract class StreamingTask < Params, Item, Result > extends AsyncTask < Params, Result >
+{
+        private final Runnable mDelivery;
+        private boolean mDeliveryPending;
+        private long mLastDeliveryTime;
+        private List < Item > mPending;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Constructor.
+         * 
+         * @since 0.0.1
+         */
+        public StreamingTask ()
+        {
+                super ();
+
+                mDelivery = newDelivery ();
+                mPending = new ArrayList < Item > ();
+        }
+
+        /**
+         * Constructor.
+         * 
+         * @param dispatcher Delivers callbacks of this task.
+         * @since 0.0.1
+         */
+        public StreamingTask ( Dispatcher dispatcher )
+        {
+                super ( dispatcher );
+
+                mDelivery = newDelivery ();
+                mPending = new ArrayList < Item > ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Protected Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * This callback method is invoked in the UI thread with the items published since the previous invocation, in
+         * publishing order.
+         * 
+         * @param items A batch of items, never empty.
+         * @since 0.0.1
+         */
+        protected void onPartialResult ( List < Item > items )
+        {
+                // Empty
+        }
+
+        /**
+         * Publishes an item. This method can be invoked from {@link #doInBackground(Object...)} as often as needed.
+         * 
+         * @param item The item.
+         * @since 0.0.1
+         */
+        protected final void publishPartialResult ( Item item )
+        {
+                long delay;
+
+                synchronized ( this )
+                {
+                        mPending.add ( item );
+
+                        if ( mDeliveryPending )
+                        {
+                                return;
+                        }
+
+                        mDeliveryPending = true;
+
+                        delay = mLastDeliveryTime + FRAME_INTERVAL_MILLIS - uptimeMillis ();
+                }
+
+                getDispatcher ().postDelayed ( mDelivery, delay );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Package Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        @Override
+        void flushPartialResults ()
+        {
+                getDispatcher ().removeCallbacks ( mDelivery );
+
+                deliver ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Hands pending items to {@link #onPartialResult(List)}. Must be called in the UI thread.
+         */
+        private void deliver ()
+        {
+                List < Item > items;
+
+                synchronized ( this )
+                {
+                        mDeliveryPending = false;
+                        mLastDeliveryTime = uptimeMillis ();
+
+                        if ( mPending.isEmpty () )
+                        {
+                                return;
+                        }
+
+                        items = mPending;
+                        mPending = new ArrayList < Item > ();
+                }
+
+                if ( !isCancelled () && !isScopeClosed () )
+                {
+                        onPartialResult ( items );
+                }
+        }
+
+        private Runnable newDelivery ()
+        {
+                return new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                deliver ();
+                        }
+                };
+        }
+}
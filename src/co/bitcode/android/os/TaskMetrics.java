@@ -0,0 +1,312 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Collects timing statistics about {@link AsyncTask} executions.
+ * <p>
+ * Statistics are kept per task class and recorded into {@link Histogram}s: time spent waiting for a worker thread,
+ * time spent in {@link AsyncTask#doInBackground(Object...)}, time spent in UI callbacks and length of the executor
+ * queue when tasks are submitted. Recording is disabled by default, in which case the only overhead is a volatile
+ * read per callback.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see #setEnabled(boolean)
+ * @see #snapshot()
+ * @since 0.0.1
+ */
+public final class TaskMetrics
+{
+        private static final ConcurrentMap < String, TaskMetrics > METRICS = new ConcurrentHashMap < String, TaskMetrics > ();
+        private static volatile boolean sEnabled;
+
+        private final Histogram mCallbackTime;
+        private final Histogram mQueueDepth;
+        private final Histogram mQueueWait;
+        private final Histogram mRunTime;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * A point-in-time copy of all collected statistics.
+         * 
+         * @author Lorenzo Villani
+         */
+        public static final class Snapshot
+        {
+                private final int mActiveCount;
+                private final int mQueueDepth;
+                private final Map < String, TaskMetrics > mTasks;
+                private final long mTimestamp;
+
+                private Snapshot ( Map < String, TaskMetrics > tasks, int queueDepth, int activeCount )
+                {
+                        mActiveCount = activeCount;
+                        mQueueDepth = queueDepth;
+                        mTasks = Collections.unmodifiableMap ( tasks );
+                        mTimestamp = System.currentTimeMillis ();
+                }
+
+                /**
+                 * @return Amount of threads of the default executor running tasks, or <code>-1</code> if unknown.
+                 */
+                public int getActiveCount ()
+                {
+                        return mActiveCount;
+                }
+
+                /**
+                 * @return Amount of tasks waiting in the queue of the default executor, or <code>-1</code> if unknown.
+                 */
+                public int getQueueDepth ()
+                {
+                        return mQueueDepth;
+                }
+
+                /**
+                 * @return Statistics by task class name.
+                 */
+                public Map < String, TaskMetrics > getTasks ()
+                {
+                        return mTasks;
+                }
+
+                /**
+                 * @return Wall clock time at which this snapshot was taken.
+                 */
+                public long getTimestamp ()
+                {
+                        return mTimestamp;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        private TaskMetrics ()
+        {
+                this ( new Histogram ( Histogram.LATENCY_BOUNDS ), new Histogram ( Histogram.COUNT_BOUNDS ),
+                                new Histogram ( Histogram.LATENCY_BOUNDS ), new Histogram ( Histogram.LATENCY_BOUNDS ) );
+        }
+
+        private TaskMetrics ( Histogram callbackTime, Histogram queueDepth, Histogram queueWait, Histogram runTime )
+        {
+                mCallbackTime = callbackTime;
+                mQueueDepth = queueDepth;
+                mQueueWait = queueWait;
+                mRunTime = runTime;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Static Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @return Whether statistics are being recorded.
+         * @since 0.0.1
+         */
+        public static boolean isEnabled ()
+        {
+                return sEnabled;
+        }
+
+        /**
+         * Discards all statistics collected so far.
+         * 
+         * @since 0.0.1
+         */
+        public static void reset ()
+        {
+                METRICS.clear ();
+        }
+
+        /**
+         * Starts or stops recording statistics. Statistics collected so far are kept.
+         * 
+         * @param enabled Whether to record statistics.
+         * @since 0.0.1
+         */
+        public static void setEnabled ( boolean enabled )
+        {
+                sEnabled = enabled;
+        }
+
+        /**
+         * Copies all statistics collected so far, along with the current state of the default executor.
+         * 
+         * @return A {@link Snapshot}.
+         * @since 0.0.1
+         */
+        public static Snapshot snapshot ()
+        {
+                Executor executor;
+                Map < String, TaskMetrics > tasks;
+
+                executor = AsyncTask.getDefaultExecutor ();
+                tasks = new HashMap < String, TaskMetrics > ();
+
+                for ( Map.Entry < String, TaskMetrics > entry : METRICS.entrySet () )
+                {
+                        tasks.put ( entry.getKey (), entry.getValue ().copy () );
+                }
+
+                if ( executor instanceof ThreadPoolExecutor )
+                {
+                        return new Snapshot ( tasks, ( ( ThreadPoolExecutor ) executor ).getQueue ().size (),
+                                        ( ( ThreadPoolExecutor ) executor ).getActiveCount () );
+                }
+                else
+                {
+                        return new Snapshot ( tasks, -1, -1 );
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @return Time spent in UI callbacks, in microseconds.
+         * @since 0.0.1
+         */
+        public Histogram getCallbackTime ()
+        {
+                return mCallbackTime;
+        }
+
+        /**
+         * @return Length of the executor queue when tasks were submitted.
+         * @since 0.0.1
+         */
+        public Histogram getQueueDepth ()
+        {
+                return mQueueDepth;
+        }
+
+        /**
+         * @return Time between submission and start of tasks, in microseconds.
+         * @since 0.0.1
+         */
+        public Histogram getQueueWait ()
+        {
+                return mQueueWait;
+        }
+
+        /**
+         * @return Time spent in {@link AsyncTask#doInBackground(Object...)}, in microseconds.
+         * @since 0.0.1
+         */
+        public Histogram getRunTime ()
+        {
+                return mRunTime;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Package-private Static Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Records time spent in UI callbacks.
+         * 
+         * @param task The task.
+         * @param startNanos Value of {@link System#nanoTime()} when callbacks started.
+         */
+        static void recordCallbackTime ( Object task, long startNanos )
+        {
+                get ( task ).mCallbackTime.record ( ( System.nanoTime () - startNanos ) / 1000 );
+        }
+
+        /**
+         * Records the length of the queue of an executor a task is being submitted to.
+         * 
+         * @param task The task.
+         * @param executor The executor.
+         */
+        static void recordQueueDepth ( Object task, Executor executor )
+        {
+                if ( executor instanceof ThreadPoolExecutor )
+                {
+                        get ( task ).mQueueDepth.record ( ( ( ThreadPoolExecutor ) executor ).getQueue ().size () );
+                }
+        }
+
+        /**
+         * Records the time a task waited for a worker thread.
+         * 
+         * @param task The task.
+         * @param enqueueNanos Value of {@link System#nanoTime()} when the task was submitted.
+         */
+        static void recordQueueWait ( Object task, long enqueueNanos )
+        {
+                get ( task ).mQueueWait.record ( ( System.nanoTime () - enqueueNanos ) / 1000 );
+        }
+
+        /**
+         * Records the time spent in background computation.
+         * 
+         * @param task The task.
+         * @param startNanos Value of {@link System#nanoTime()} when the computation started.
+         */
+        static void recordRunTime ( Object task, long startNanos )
+        {
+                get ( task ).mRunTime.record ( ( System.nanoTime () - startNanos ) / 1000 );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        private static TaskMetrics get ( Object task )
+        {
+                String name;
+                TaskMetrics metrics;
+                TaskMetrics existing;
+
+                name = task.getClass ().getName ();
+                metrics = METRICS.get ( name );
+
+                if ( metrics == null )
+                {
+                        metrics = new TaskMetrics ();
+                        existing = METRICS.putIfAbsent ( name, metrics );
+
+                        if ( existing != null )
+                        {
+                                metrics = existing;
+                        }
+                }
+
+                return metrics;
+        }
+
+        private TaskMetrics copy ()
+        {
+                return new TaskMetrics ( mCallbackTime.copy (), mQueueDepth.copy (), mQueueWait.copy (), mRunTime.copy () );
+        }
+}
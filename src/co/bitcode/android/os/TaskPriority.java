@@ -0,0 +1,54 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+/**
+ * Priority classes used to order background work waiting for a worker thread.
+ * <p>
+ * Constants are declared from the most urgent to the least urgent one: when several tasks are waiting, a
+ * {@link PriorityExecutor} always starts the task with the most urgent priority first. Tasks sharing the same priority
+ * are started in submission order.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see Prioritized
+ * @see PriorityExecutor
+ * @since 0.0.1
+ */
+public enum TaskPriority
+{
+        /**
+         * Work the user is actively waiting for, such as saving a document or submitting a form.
+         */
+        USER_BLOCKING,
+
+        /**
+         * Work whose result will be immediately visible on screen, such as loading the pictures of the visible rows.
+         */
+        VISIBLE,
+
+        /**
+         * Work which is likely to be needed soon, such as loading the pictures of the rows right below the visible
+         * ones.
+         */
+        PREFETCH,
+
+        /**
+         * Work nobody is waiting for, such as cache maintenance or synchronization.
+         */
+        BACKGROUND;
+}
@@ -0,0 +1,388 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Runs delayed and periodic work on the UI thread, coalescing the wakeups of all its registrations.
+ * <p>
+ * Every registration may run up to a fixed amount of time, the slack, after it is due, but never before. The scheduler
+ * posts a single wakeup to its {@link Dispatcher}, as late as the most urgent registration allows, and runs everything
+ * which is due by then. Periodic registrations keep a fixed rate, so once they share a tick they keep sharing it. Use a
+ * single scheduler for the whole application and a slack as large as the work tolerates: the fewer the wakeups, the
+ * less often the CPU is woken and the UI thread interrupted.
+ * </p>
+ * <p>
+ * A scheduled {@link AsyncTask} is executed when due. A periodic task skips ticks while its previous execution is still
+ * in flight, and is unregistered once its {@link TaskScope} is closed.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @since 0.0.1
+ */
+public class TaskScheduler
+{
+        /**
+         * Default slack, in milliseconds.
+         */
+        public static final long DEFAULT_SLACK_MILLIS = 500;
+
+        private final Dispatcher mDispatcher;
+        private final PriorityQueue < Registration > mQueue;
+        private long mSequence;
+        private final long mSlackMillis;
+        private final Runnable mTick;
+        private long mWakeupTime;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * A scheduled piece of work.
+         * 
+         * @author Lorenzo Villani
+         * @since 0.0.1
+         */
+        public static final class Registration implements Comparable < Registration >
+        {
+                private final Runnable mAction;
+                private volatile boolean mCancelled;
+                private long mDueTime;
+                private final long mPeriodMillis;
+                private final TaskScheduler mScheduler;
+                private long mSequence;
+                private final AsyncTask < ?, ? > mTask;
+
+                private Registration ( TaskScheduler scheduler, Runnable action, AsyncTask < ?, ? > task,
+                                long periodMillis )
+                {
+                        mAction = action;
+                        mPeriodMillis = periodMillis;
+                        mScheduler = scheduler;
+                        mTask = task;
+                }
+
+                /**
+                 * Stops future runs. Runs already started are not affected, cancel the task for that.
+                 * 
+                 * @since 0.0.1
+                 */
+                public void cancel ()
+                {
+                        mCancelled = true;
+
+                        mScheduler.remove ( this );
+                }
+
+                /**
+                 * @return <code>true</code> if this registration has been cancelled.
+                 * @since 0.0.1
+                 */
+                public boolean isCancelled ()
+                {
+                        return mCancelled;
+                }
+
+                @Override
+                public int compareTo ( Registration another )
+                {
+                        if ( mDueTime != another.mDueTime )
+                        {
+                                return mDueTime < another.mDueTime ? -1 : 1;
+                        }
+
+                        return mSequence < another.mSequence ? -1 : ( mSequence > another.mSequence ? 1 : 0 );
+                }
+
+                /**
+                 * Runs this registration. Must be called in the UI thread.
+                 * 
+                 * @return <code>false</code> if it must not be rescheduled.
+                 */
+                private boolean run ()
+                {
+                        if ( mAction != null )
+                        {
+                                mAction.run ();
+
+                                return true;
+                        }
+
+                        if ( mTask.getScope () != null && mTask.getScope ().isClosed () )
+                        {
+                                return false;
+                        }
+
+                        if ( mPeriodMillis == 0 || !mTask.isInFlight () )
+                        {
+                                mTask.execute ();
+                        }
+
+                        return true;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Creates a scheduler with {@link #DEFAULT_SLACK_MILLIS} slack, running work on the default dispatcher or, if
+         * there is none, the Looper of the calling thread.
+         * 
+         * @see AsyncTask#setDefaultDispatcher(Dispatcher)
+         * @since 0.0.1
+         */
+        public TaskScheduler ()
+        {
+                this ( AsyncTask.getDefaultDispatcher () != null ? AsyncTask.getDefaultDispatcher ()
+                                : new HandlerDispatcher (), DEFAULT_SLACK_MILLIS );
+        }
+
+        /**
+         * @param dispatcher Runs scheduled work.
+         * @param slackMillis How late, in milliseconds, work may run to share a wakeup with other work.
+         * @since 0.0.1
+         */
+        public TaskScheduler ( Dispatcher dispatcher, long slackMillis )
+        {
+                if ( dispatcher == null || slackMillis < 0 )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mDispatcher = dispatcher;
+                mQueue = new PriorityQueue < Registration > ();
+                mSlackMillis = slackMillis;
+                mTick = new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                tick ();
+                        }
+                };
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @return How late, in milliseconds, work may run to share a wakeup with other work.
+         * @since 0.0.1
+         */
+        public long getSlack ()
+        {
+                return mSlackMillis;
+        }
+
+        /**
+         * Executes a task once after a delay.
+         * 
+         * @param task The task, executed without parameters.
+         * @param delayMillis Delay in milliseconds.
+         * @return A {@link Registration} which can be cancelled.
+         * @since 0.0.1
+         */
+        public Registration schedule ( AsyncTask < ?, ? > task, long delayMillis )
+        {
+                return add ( new Registration ( this, null, task, 0 ), delayMillis );
+        }
+
+        /**
+         * Runs an action in the UI thread once after a delay.
+         * 
+         * @param action The action.
+         * @param delayMillis Delay in milliseconds.
+         * @return A {@link Registration} which can be cancelled.
+         * @since 0.0.1
+         */
+        public Registration schedule ( Runnable action, long delayMillis )
+        {
+                return add ( new Registration ( this, action, null, 0 ), delayMillis );
+        }
+
+        /**
+         * Executes a task repeatedly, skipping ticks while it is still in flight.
+         * 
+         * @param task The task, executed without parameters.
+         * @param initialDelayMillis Delay of the first execution in milliseconds.
+         * @param periodMillis Time between executions in milliseconds.
+         * @return A {@link Registration} which can be cancelled.
+         * @since 0.0.1
+         */
+        public Registration scheduleAtFixedRate ( AsyncTask < ?, ? > task, long initialDelayMillis, long periodMillis )
+        {
+                checkPeriod ( periodMillis );
+
+                return add ( new Registration ( this, null, task, periodMillis ), initialDelayMillis );
+        }
+
+        /**
+         * Runs an action in the UI thread repeatedly, for example to refresh relative timestamps.
+         * 
+         * @param action The action.
+         * @param initialDelayMillis Delay of the first run in milliseconds.
+         * @param periodMillis Time between runs in milliseconds.
+         * @return A {@link Registration} which can be cancelled.
+         * @since 0.0.1
+         */
+        public Registration scheduleAtFixedRate ( Runnable action, long initialDelayMillis, long periodMillis )
+        {
+                checkPeriod ( periodMillis );
+
+                return add ( new Registration ( this, action, null, periodMillis ), initialDelayMillis );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        private synchronized Registration add ( Registration registration, long delayMillis )
+        {
+                if ( registration.mAction == null && registration.mTask == null )
+                {
+                        throw new NullPointerException ();
+                }
+
+                registration.mDueTime = AsyncTask.uptimeMillis () + Math.max ( 0, delayMillis );
+                registration.mSequence = mSequence++;
+
+                mQueue.add ( registration );
+
+                rearm ();
+
+                return registration;
+        }
+
+        private static void checkPeriod ( long periodMillis )
+        {
+                if ( periodMillis <= 0 )
+                {
+                        throw new IllegalArgumentException ( "Period must be positive" );
+                }
+        }
+
+        /**
+         * Posts the wakeup for the most urgent registration, replacing the current one if it is too late. Must be
+         * called while holding the lock of this scheduler.
+         */
+        private void rearm ()
+        {
+                Registration head;
+                long now;
+                long wakeupTime;
+
+                head = mQueue.peek ();
+
+                if ( head == null )
+                {
+                        if ( mWakeupTime != 0 )
+                        {
+                                mDispatcher.removeCallbacks ( mTick );
+
+                                mWakeupTime = 0;
+                        }
+
+                        return;
+                }
+
+                wakeupTime = head.mDueTime + mSlackMillis;
+
+                if ( mWakeupTime != 0 && mWakeupTime <= wakeupTime )
+                {
+                        // The pending wakeup is early enough
+                        return;
+                }
+
+                now = AsyncTask.uptimeMillis ();
+
+                mDispatcher.removeCallbacks ( mTick );
+                mDispatcher.postDelayed ( mTick, Math.max ( 0, wakeupTime - now ) );
+
+                mWakeupTime = wakeupTime;
+        }
+
+        private synchronized void remove ( Registration registration )
+        {
+                if ( mQueue.remove ( registration ) )
+                {
+                        rearm ();
+                }
+        }
+
+        /**
+         * Runs all due registrations, then reschedules periodic ones on their fixed rate.
+         */
+        private void tick ()
+        {
+                List < Registration > due;
+                long now;
+
+                due = new ArrayList < Registration > ();
+
+                synchronized ( this )
+                {
+                        mWakeupTime = 0;
+
+                        now = AsyncTask.uptimeMillis ();
+
+                        while ( !mQueue.isEmpty () && mQueue.peek ().mDueTime <= now )
+                        {
+                                due.add ( mQueue.poll () );
+                        }
+                }
+
+                for ( Registration registration : due )
+                {
+                        if ( registration.mCancelled )
+                        {
+                                continue;
+                        }
+
+                        if ( !registration.run () )
+                        {
+                                registration.mCancelled = true;
+                        }
+                }
+
+                synchronized ( this )
+                {
+                        for ( Registration registration : due )
+                        {
+                                if ( registration.mPeriodMillis == 0 || registration.mCancelled )
+                                {
+                                        continue;
+                                }
+
+                                // Skip missed periods instead of running them in a burst
+                                registration.mDueTime += registration.mPeriodMillis
+                                                * ( ( now - registration.mDueTime ) / registration.mPeriodMillis + 1 );
+
+                                mQueue.add ( registration );
+                        }
+
+                        rearm ();
+                }
+        }
+}
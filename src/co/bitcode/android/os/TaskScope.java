@@ -0,0 +1,183 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.os;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * Ties tasks to the lifetime of an owner, such as an Activity or a Fragment.
+ * <p>
+ * The owner is only weakly referenced, tasks can reach it through {@link AsyncTask#getOwner()} instead of capturing
+ * it. Once the scope is closed, either explicitly with {@link #close()} or because its owner is gone, its tasks are
+ * cancelled and their UI callbacks are no longer invoked, so that a destroyed screen is neither retained nor touched by
+ * work it started.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setScope(TaskScope)
+ * @see co.bitcode.android.app.TaskScopeFragment
+ * @since 0.0.1
+ */
+public class TaskScope
+{
+        private volatile boolean mClosed;
+        private final WeakReference < Object > mOwner;
+        private final WeakHashMap < AsyncTask < ?, ? >, Boolean > mTasks;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param owner The object whose lifetime bounds the tasks of this scope.
+         * @since 0.0.1
+         */
+        public TaskScope ( Object owner )
+        {
+                if ( owner == null )
+                {
+                        throw new IllegalArgumentException ();
+                }
+
+                mOwner = new WeakReference < Object > ( owner );
+                mTasks = new WeakHashMap < AsyncTask < ?, ? >, Boolean > ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Cancels all tasks of this scope and drops their pending UI callbacks. Tasks executed afterwards are cancelled
+         * right away. Must be called in the UI thread.
+         * 
+         * @since 0.0.1
+         */
+        public void close ()
+        {
+                List < AsyncTask < ?, ? > > tasks;
+
+                synchronized ( mTasks )
+                {
+                        mClosed = true;
+
+                        tasks = new ArrayList < AsyncTask < ?, ? > > ( mTasks.keySet () );
+
+                        mTasks.clear ();
+                }
+
+                for ( AsyncTask < ?, ? > task : tasks )
+                {
+                        task.cancel ( true );
+                }
+        }
+
+        /**
+         * @return The owner of this scope, or <code>null</code> if it has been garbage collected.
+         * @since 0.0.1
+         */
+        public Object getOwner ()
+        {
+                return mOwner.get ();
+        }
+
+        /**
+         * Checks whether tasks of this scope may still deliver callbacks. A scope whose owner is gone closes itself.
+         * 
+         * @return <code>true</code> if this scope has been closed.
+         * @since 0.0.1
+         */
+        public boolean isClosed ()
+        {
+                Object owner;
+
+                if ( mClosed )
+                {
+                        return true;
+                }
+
+                owner = mOwner.get ();
+
+                if ( owner == null || !isAlive ( owner ) )
+                {
+                        close ();
+
+                        return true;
+                }
+
+                return false;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Protected Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Tells whether the owner can still receive callbacks. The default implementation always returns
+         * <code>true</code>, subclasses can inspect the state of the owner.
+         * 
+         * @param owner The owner of this scope.
+         * @return <code>false</code> if the owner is dead.
+         * @since 0.0.1
+         */
+        protected boolean isAlive ( Object owner )
+        {
+                return true;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Package Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Registers a task about to be executed.
+         * 
+         * @param task
+         * @return <code>false</code> if this scope is already closed.
+         */
+        boolean add ( AsyncTask < ?, ? > task )
+        {
+                synchronized ( mTasks )
+                {
+                        if ( mClosed )
+                        {
+                                return false;
+                        }
+
+                        mTasks.put ( task, Boolean.TRUE );
+                }
+
+                return true;
+        }
+
+        /**
+         * Unregisters a completed task.
+         * 
+         * @param task
+         */
+        void remove ( AsyncTask < ?, ? > task )
+        {
+                synchronized ( mTasks )
+                {
+                        mTasks.remove ( task );
+                }
+        }
+}
@@ -0,0 +1,194 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Dispatcher} which delivers callbacks on a dedicated thread, standing in for the UI thread where there is no
+ * {@link android.os.Looper}.
+ * <p>
+ * Meant for JVM integration tests and tools which run background logic written for {@link AsyncTask} outside of
+ * Android. The dispatch thread is a daemon thread, it won't keep the virtual machine alive.
+ * </p>
+ * <p>
+ * Exceptions thrown by callbacks are handed to the uncaught exception handler of the dispatch thread, just like they
+ * would crash the UI thread on Android, so that failures in {@link AsyncTask#onFinish(Object)} or
+ * {@link AsyncTask#onCatchError(Throwable)} are not lost.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setDefaultDispatcher(Dispatcher)
+ * @since 0.0.1
+ */
+public class ThreadDispatcher implements Dispatcher
+{
+        private final ScheduledThreadPoolExecutor mExecutor;
+        private final Map < Runnable, List < Future < ? > > > mPending;
+        private volatile Thread mThread;
+
+        /**
+         * @param name Name of the dispatch thread.
+         * @since 0.0.1
+         */
+        public ThreadDispatcher ( String name )
+        {
+                this ( name, null );
+        }
+
+        /**
+         * @param name Name of the dispatch thread.
+         * @param handler Receives exceptions thrown by callbacks, <code>null</code> to use the default handler.
+         * @since 0.0.1
+         */
+        public ThreadDispatcher ( final String name, final Thread.UncaughtExceptionHandler handler )
+        {
+                mPending = new IdentityHashMap < Runnable, List < Future < ? > > > ();
+
+                mExecutor = new ScheduledThreadPoolExecutor ( 1, new ThreadFactory ()
+                {
+                        @Override
+                        public Thread newThread ( Runnable runnable )
+                        {
+                                Thread thread;
+
+                                thread = new Thread ( runnable, name );
+                                thread.setDaemon ( true );
+
+                                if ( handler != null )
+                                {
+                                        thread.setUncaughtExceptionHandler ( handler );
+                                }
+
+                                mThread = thread;
+
+                                return thread;
+                        }
+                } );
+        }
+
+        @Override
+        public boolean isDispatchThread ()
+        {
+                return Thread.currentThread () == mThread;
+        }
+
+        @Override
+        public void post ( Runnable runnable )
+        {
+                postDelayed ( runnable, 0 );
+        }
+
+        @Override
+        public void postDelayed ( final Runnable runnable, long delayMillis )
+        {
+                final Future < ? >[] future = new Future < ? >[1];
+                List < Future < ? > > futures;
+
+                synchronized ( mPending )
+                {
+                        future[0] = mExecutor.schedule ( new Runnable ()
+                        {
+                                @Override
+                                public void run ()
+                                {
+                                        Thread thread;
+
+                                        forget ( runnable, future[0] );
+
+                                        try
+                                        {
+                                                runnable.run ();
+                                        }
+                                        catch ( Throwable ex )
+                                        {
+                                                // The scheduled future would swallow it
+                                                thread = Thread.currentThread ();
+                                                thread.getUncaughtExceptionHandler ().uncaughtException ( thread, ex );
+                                        }
+                                }
+                        }, Math.max ( 0, delayMillis ), TimeUnit.MILLISECONDS );
+
+                        futures = mPending.get ( runnable );
+
+                        if ( futures == null )
+                        {
+                                futures = new ArrayList < Future < ? > > ( 1 );
+
+                                mPending.put ( runnable, futures );
+                        }
+
+                        futures.add ( future[0] );
+                }
+        }
+
+        @Override
+        public void removeCallbacks ( Runnable runnable )
+        {
+                List < Future < ? > > futures;
+
+                synchronized ( mPending )
+                {
+                        futures = mPending.remove ( runnable );
+                }
+
+                if ( futures != null )
+                {
+                        for ( Future < ? > future : futures )
+                        {
+                                future.cancel ( false );
+                        }
+                }
+        }
+
+        /**
+         * Stops the dispatch thread. Pending callbacks are discarded.
+         * 
+         * @since 0.0.1
+         */
+        public void shutdown ()
+        {
+                mExecutor.shutdownNow ();
+        }
+
+        private void forget ( Runnable runnable, Future < ? > future )
+        {
+                List < Future < ? > > futures;
+
+                synchronized ( mPending )
+                {
+                        futures = mPending.get ( runnable );
+
+                        if ( futures != null )
+                        {
+                                futures.remove ( future );
+
+                                if ( futures.isEmpty () )
+                                {
+                                        mPending.remove ( runnable );
+                                }
+                        }
+                }
+        }
+}
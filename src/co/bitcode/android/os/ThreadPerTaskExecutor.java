@@ -0,0 +1,106 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Executor} which starts a new thread for each task, without any limit on concurrency.
+ * <p>
+ * When running on a Java virtual machine which supports virtual threads, tasks run on virtual threads: blocking I/O in
+ * {@link AsyncTask#doInBackground(Object...)} then scales to thousands of concurrent tasks. Elsewhere, including on
+ * Android, tasks run on ordinary daemon threads, which is only appropriate for a small amount of concurrent tasks.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setDefaultExecutor(Executor)
+ * @since 0.0.1
+ */
+public class ThreadPerTaskExecutor implements Executor
+{
+        private final AtomicInteger mCount;
+        private final String mName;
+        private final ThreadFactory mVirtualThreadFactory;
+
+        /**
+         * @param name Name prefix of threads.
+         * @since 0.0.1
+         */
+        public ThreadPerTaskExecutor ( String name )
+        {
+                mCount = new AtomicInteger ( 1 );
+                mName = name;
+                mVirtualThreadFactory = createVirtualThreadFactory ( name );
+        }
+
+        @Override
+        public void execute ( Runnable command )
+        {
+                Thread thread;
+
+                if ( mVirtualThreadFactory != null )
+                {
+                        thread = mVirtualThreadFactory.newThread ( command );
+                }
+                else
+                {
+                        thread = new Thread ( command, mName + " #" + mCount.getAndIncrement () );
+                        thread.setDaemon ( true );
+                }
+
+                thread.start ();
+        }
+
+        /**
+         * @return <code>true</code> if tasks run on virtual threads.
+         * @since 0.0.1
+         */
+        public boolean isVirtual ()
+        {
+                return mVirtualThreadFactory != null;
+        }
+
+        /**
+         * Looks up virtual threads by reflection, they can't be referenced directly from code which also runs on
+         * Android.
+         * 
+         * @param name Name prefix of threads.
+         * @return A factory of virtual threads, or <code>null</code> if they are not supported.
+         */
+        private static ThreadFactory createVirtualThreadFactory ( String name )
+        {
+                Class < ? > builderClass;
+                Object builder;
+
+                try
+                {
+                        builderClass = Class.forName ( "java.lang.Thread$Builder" );
+                        builder = Thread.class.getMethod ( "ofVirtual" ).invoke ( null );
+                        builder = builderClass.getMethod ( "name", String.class, long.class ).invoke ( builder,
+                                        name + " #", 1L );
+
+                        return ( ThreadFactory ) builderClass.getMethod ( "factory" ).invoke ( builder );
+                }
+                catch ( Exception ex )
+                {
+                        return null;
+                }
+        }
+}
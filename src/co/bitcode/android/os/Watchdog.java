@@ -0,0 +1,242 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.bitcode.android.os;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * Keeps an eye on running {@link AsyncTask}s: enforces their deadlines and reports the ones which take too long.
+ * <p>
+ * Reporting is disabled by default, enable it with {@link #setSoftThreshold(long)}. Slow tasks are reported to the
+ * installed {@link Listener}, which by default prints a warning with the stack trace of the worker thread on the
+ * LogCat.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see AsyncTask#setTimeout(long)
+ * @since 0.0.1
+ */
+public final class Watchdog
+{
+        private static final String TAG = "Watchdog";
+        private static final long HAND_OFF_KEEP_ALIVE_SECONDS = 30;
+
+        /**
+         * Runs actions which may block, so that they can't hold up the timer. Threads are only created while all the
+         * others are busy.
+         */
+        private static final Executor HAND_OFF;
+
+        private static final ScheduledThreadPoolExecutor TIMER;
+        private static volatile Listener sListener;
+        private static volatile long sSoftThreshold;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Receives reports about slow tasks.
+         * 
+         * @author Lorenzo Villani
+         */
+        public interface Listener
+        {
+                /**
+                 * Invoked in the watchdog thread when a task has been running for longer than the soft threshold.
+                 * 
+                 * @param task The slow task.
+                 * @param thread The worker thread running the task.
+                 * @param elapsedMillis How long the task has been running.
+                 */
+                void onSlowTask ( AsyncTask < ?, ? > task, Thread thread, long elapsedMillis );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Static Initialization
+        // -------------------------------------------------------------------------------------------------------------
+
+        static
+        {
+                TIMER = new ScheduledThreadPoolExecutor ( 1, newDaemonThreadFactory ( "AsyncTask Watchdog" ) );
+
+                HAND_OFF = new ThreadPoolExecutor ( 0, Integer.MAX_VALUE, HAND_OFF_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                new SynchronousQueue < Runnable > (), newDaemonThreadFactory ( "AsyncTask Hand-off" ) );
+
+                sListener = new Listener ()
+                {
+                        @Override
+                        public void onSlowTask ( AsyncTask < ?, ? > task, Thread thread, long elapsedMillis )
+                        {
+                                Throwable trace;
+
+                                trace = new Throwable ( thread.getName () );
+                                trace.setStackTrace ( thread.getStackTrace () );
+
+                                Log.w ( TAG, task.getClass ().getName () + " running for " + elapsedMillis + "ms", trace );
+                        }
+                };
+        }
+
+        private Watchdog ()
+        {
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Static Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @return How long a task may run before being reported, or <code>0</code> if reporting is disabled.
+         * @since 0.0.1
+         */
+        public static long getSoftThreshold ()
+        {
+                return sSoftThreshold;
+        }
+
+        /**
+         * Replaces the receiver of slow task reports.
+         * 
+         * @param listener The new {@link Listener}.
+         * @since 0.0.1
+         */
+        public static void setListener ( Listener listener )
+        {
+                if ( listener == null )
+                {
+                        throw new IllegalArgumentException ( "listener must not be null" );
+                }
+
+                sListener = listener;
+        }
+
+        /**
+         * Sets how long a task may run before being reported. Unlike a deadline, exceeding it does not affect the task.
+         * 
+         * @param millis Threshold in milliseconds, or <code>0</code> to disable reporting.
+         * @since 0.0.1
+         */
+        public static void setSoftThreshold ( long millis )
+        {
+                sSoftThreshold = millis;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Package-private Static Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Stops a timer, discarding it right away so that cancelled timers don't pile up.
+         * 
+         * @param timer A timer returned by this class, may be <code>null</code>.
+         */
+        static void cancel ( Future < ? > timer )
+        {
+                if ( timer != null && timer.cancel ( false ) )
+                {
+                        TIMER.remove ( ( Runnable ) timer );
+                }
+        }
+
+        /**
+         * Runs an action once a deadline expires.
+         * 
+         * @param action The action.
+         * @param delayMillis Time until the deadline.
+         * @return A timer to pass to {@link #cancel(Future)}.
+         */
+        static Future < ? > schedule ( Runnable action, long delayMillis )
+        {
+                return TIMER.schedule ( action, delayMillis, TimeUnit.MILLISECONDS );
+        }
+
+        /**
+         * Runs an action once a delay elapses, in a thread other than the timer one. Meant for actions which may block,
+         * such as submitting a task to an executor which runs it in the submitting thread.
+         * 
+         * @param action The action.
+         * @param delayMillis Time until the action runs.
+         * @return A timer to pass to {@link #cancel(Future)}.
+         */
+        static Future < ? > scheduleHandOff ( final Runnable action, long delayMillis )
+        {
+                return schedule ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                HAND_OFF.execute ( action );
+                        }
+                }, delayMillis );
+        }
+
+        /**
+         * Starts watching a task which has just started running in the calling thread.
+         * 
+         * @param task The task.
+         * @return A timer to pass to {@link #cancel(Future)}, or <code>null</code> if reporting is disabled.
+         */
+        static Future < ? > watch ( final AsyncTask < ?, ? > task )
+        {
+                final long threshold = sSoftThreshold;
+                final Thread thread = Thread.currentThread ();
+
+                if ( threshold <= 0 )
+                {
+                        return null;
+                }
+
+                return schedule ( new Runnable ()
+                {
+                        @Override
+                        public void run ()
+                        {
+                                sListener.onSlowTask ( task, thread, threshold );
+                        }
+                }, threshold );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Static Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        private static ThreadFactory newDaemonThreadFactory ( final String name )
+        {
+                return new ThreadFactory ()
+                {
+                        @Override
+                        public Thread newThread ( Runnable runnable )
+                        {
+                                Thread thread;
+
+                                thread = new Thread ( runnable, name );
+                                thread.setDaemon ( true );
+
+                                return thread;
+                        }
+                };
+        }
+}
@@ -0,0 +1,398 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.widget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Decodes pictures no larger than the view showing them.
+ * <p>
+ * Pictures are subsampled by the largest power of two which keeps them at least as large as the requested size and,
+ * when exact scaling is enabled, scaled down to cover it exactly. Either dimension of the requested size can be
+ * <code>0</code> to leave it unbounded.
+ * </p>
+ * <p>
+ * Encoded pictures are read into buffers recycled through a pool bucketed by powers of two, so that loading a
+ * screenful of pictures doesn't allocate a new array for each of them.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see RemoteImageView#fetchRemoteImage(android.net.Uri, BitmapDecoder)
+ * @since 0.0.1
+ */
+public class BitmapDecoder
+{
+        private static final int BUFFER_POOL_BYTES = 1024 * 1024;
+        private static final int MIN_BUFFER_BYTES = 16 * 1024;
+
+        private static final BufferPool sBufferPool = new BufferPool ( BUFFER_POOL_BYTES );
+
+        private final Bitmap.Config mConfig;
+        private final boolean mExactScaling;
+        private final int mHeight;
+        private final int mWidth;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Byte arrays whose sizes are powers of two, bounded by their total size.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class BufferPool
+        {
+                private final HashMap < Integer, LinkedList < byte[] > > mBuckets;
+                private final int mMaxBytes;
+                private int mSize;
+
+                public BufferPool ( int maxBytes )
+                {
+                        mBuckets = new HashMap < Integer, LinkedList < byte[] > > ();
+                        mMaxBytes = maxBytes;
+                }
+
+                public byte[] acquire ( int minBytes )
+                {
+                        LinkedList < byte[] > bucket;
+                        int bytes;
+
+                        bytes = MIN_BUFFER_BYTES;
+
+                        while ( bytes < minBytes )
+                        {
+                                bytes <<= 1;
+                        }
+
+                        synchronized ( this )
+                        {
+                                bucket = mBuckets.get ( bytes );
+
+                                if ( bucket != null && !bucket.isEmpty () )
+                                {
+                                        mSize -= bytes;
+
+                                        return bucket.removeFirst ();
+                                }
+                        }
+
+                        return new byte[bytes];
+                }
+
+                public synchronized void release ( byte[] buffer )
+                {
+                        LinkedList < byte[] > bucket;
+
+                        if ( mSize + buffer.length > mMaxBytes )
+                        {
+                                // Left to the garbage collector
+                                return;
+                        }
+
+                        bucket = mBuckets.get ( buffer.length );
+
+                        if ( bucket == null )
+                        {
+                                bucket = new LinkedList < byte[] > ();
+
+                                mBuckets.put ( buffer.length, bucket );
+                        }
+
+                        bucket.addFirst ( buffer );
+
+                        mSize += buffer.length;
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param width Requested width in pixels, <code>0</code> if unbounded.
+         * @param height Requested height in pixels, <code>0</code> if unbounded.
+         * @param config Pixel configuration of decoded pictures, <code>null</code> to let the decoder choose.
+         * @param exactScaling Whether subsampled pictures are further scaled down to the requested size.
+         * @since 0.0.1
+         */
+        public BitmapDecoder ( int width, int height, Bitmap.Config config, boolean exactScaling )
+        {
+                mWidth = Math.max ( 0, width );
+                mHeight = Math.max ( 0, height );
+                mConfig = config;
+                mExactScaling = exactScaling;
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Computes the largest power of two by which a picture can be subsampled while staying at least as large as the
+         * requested size.
+         * 
+         * @param width Width of the picture.
+         * @param height Height of the picture.
+         * @param requestedWidth Requested width, <code>0</code> if unbounded.
+         * @param requestedHeight Requested height, <code>0</code> if unbounded.
+         * @return The sample size, <code>1</code> if the picture must not be subsampled.
+         * @since 0.0.1
+         */
+        public static int computeSampleSize ( int width, int height, int requestedWidth, int requestedHeight )
+        {
+                int sampleSize;
+
+                if ( requestedWidth <= 0 && requestedHeight <= 0 )
+                {
+                        return 1;
+                }
+
+                sampleSize = 1;
+
+                while ( ( requestedWidth <= 0 || width / ( sampleSize * 2 ) >= requestedWidth )
+                                && ( requestedHeight <= 0 || height / ( sampleSize * 2 ) >= requestedHeight ) )
+                {
+                        sampleSize *= 2;
+                }
+
+                return sampleSize;
+        }
+
+        /**
+         * Decodes a picture.
+         * 
+         * @param data Encoded picture.
+         * @param offset Offset of the picture in <code>data</code>.
+         * @param length Length of the picture.
+         * @return The decoded {@link Bitmap}, or <code>null</code> if the picture could not be decoded.
+         * @since 0.0.1
+         */
+        public Bitmap decode ( byte[] data, int offset, int length )
+        {
+                BitmapFactory.Options options;
+                Bitmap bitmap;
+
+                options = new BitmapFactory.Options ();
+                options.inJustDecodeBounds = true;
+
+                BitmapFactory.decodeByteArray ( data, offset, length, options );
+
+                if ( options.outWidth <= 0 || options.outHeight <= 0 )
+                {
+                        return null;
+                }
+
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = computeSampleSize ( options.outWidth, options.outHeight, mWidth, mHeight );
+                options.inTempStorage = sBufferPool.acquire ( MIN_BUFFER_BYTES );
+
+                if ( mConfig != null )
+                {
+                        options.inPreferredConfig = mConfig;
+                }
+
+                try
+                {
+                        bitmap = BitmapFactory.decodeByteArray ( data, offset, length, options );
+                }
+                finally
+                {
+                        sBufferPool.release ( options.inTempStorage );
+                }
+
+                if ( bitmap == null || !mExactScaling )
+                {
+                        return bitmap;
+                }
+
+                return scale ( bitmap, true );
+        }
+
+        /**
+         * Reads and decodes a picture. The stream is not closed.
+         * 
+         * @param stream Encoded picture.
+         * @return The decoded {@link Bitmap}, or <code>null</code> if the picture could not be decoded.
+         * @throws IOException If the stream could not be read.
+         * @since 0.0.1
+         */
+        public Bitmap decode ( InputStream stream ) throws IOException
+        {
+                byte[] buffer;
+                byte[] larger;
+                int length;
+                int read;
+
+                buffer = sBufferPool.acquire ( MIN_BUFFER_BYTES );
+                length = 0;
+
+                try
+                {
+                        while ( ( read = stream.read ( buffer, length, buffer.length - length ) ) != -1 )
+                        {
+                                length += read;
+
+                                if ( length == buffer.length )
+                                {
+                                        larger = sBufferPool.acquire ( buffer.length * 2 );
+
+                                        System.arraycopy ( buffer, 0, larger, 0, length );
+                                        sBufferPool.release ( buffer );
+
+                                        buffer = larger;
+                                }
+                        }
+
+                        return decode ( buffer, 0, length );
+                }
+                finally
+                {
+                        sBufferPool.release ( buffer );
+                }
+        }
+
+        /**
+         * @return Pixel configuration of decoded pictures, <code>null</code> if chosen by the decoder.
+         * @since 0.0.1
+         */
+        public Bitmap.Config getConfig ()
+        {
+                return mConfig;
+        }
+
+        /**
+         * @return Requested height in pixels, <code>0</code> if unbounded.
+         * @since 0.0.1
+         */
+        public int getHeight ()
+        {
+                return mHeight;
+        }
+
+        /**
+         * @return Requested width in pixels, <code>0</code> if unbounded.
+         * @since 0.0.1
+         */
+        public int getWidth ()
+        {
+                return mWidth;
+        }
+
+        /**
+         * @return Whether subsampled pictures are further scaled down to the requested size.
+         * @since 0.0.1
+         */
+        public boolean isExactScaling ()
+        {
+                return mExactScaling;
+        }
+
+        /**
+         * Scales down a picture decoded elsewhere to cover the requested size, keeping its aspect ratio, and converts
+         * it to the requested pixel configuration.
+         * 
+         * @param bitmap The picture, which is left untouched.
+         * @return A smaller or converted copy of the picture, or the picture itself if it already matches the request.
+         * @since 0.0.1
+         */
+        public Bitmap scale ( Bitmap bitmap )
+        {
+                return scale ( bitmap, false );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Draws a picture onto a new bitmap with the requested pixel configuration, which
+         * {@link Bitmap#createScaledBitmap(Bitmap, int, int, boolean)} cannot change.
+         */
+        private Bitmap convert ( Bitmap bitmap, int width, int height )
+        {
+                Bitmap converted;
+                Canvas canvas;
+
+                converted = Bitmap.createBitmap ( width, height, mConfig );
+                canvas = new Canvas ( converted );
+
+                canvas.drawBitmap ( bitmap, null, new Rect ( 0, 0, width, height ),
+                                new Paint ( Paint.FILTER_BITMAP_FLAG ) );
+
+                return converted;
+        }
+
+        private Bitmap scale ( Bitmap bitmap, boolean recycle )
+        {
+                boolean converting;
+                int height;
+                float ratio;
+                Bitmap scaled;
+                int width;
+
+                if ( bitmap == null )
+                {
+                        return bitmap;
+                }
+
+                converting = mConfig != null && bitmap.getConfig () != mConfig;
+                ratio = 1;
+
+                if ( mWidth > 0 || mHeight > 0 )
+                {
+                        // Covers the requested size, never enlarges
+                        ratio = Math.max ( mWidth / ( float ) bitmap.getWidth (),
+                                        mHeight / ( float ) bitmap.getHeight () );
+                        ratio = Math.min ( 1, ratio );
+                }
+
+                if ( ratio >= 1 && !converting )
+                {
+                        return bitmap;
+                }
+
+                width = Math.max ( 1, Math.round ( bitmap.getWidth () * ratio ) );
+                height = Math.max ( 1, Math.round ( bitmap.getHeight () * ratio ) );
+
+                if ( converting )
+                {
+                        scaled = convert ( bitmap, width, height );
+                }
+                else
+                {
+                        scaled = Bitmap.createScaledBitmap ( bitmap, width, height, true );
+                }
+
+                if ( recycle && scaled != bitmap )
+                {
+                        bitmap.recycle ();
+                }
+
+                return scaled;
+        }
+}
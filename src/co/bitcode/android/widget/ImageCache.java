@@ -0,0 +1,491 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.widget;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+
+/**
+ * A two-level cache of pictures: decoded {@link Bitmap}s in memory, backed by encoded files on disk.
+ * <p>
+ * The memory level is bounded by the amount of bytes held by its bitmaps and can be queried from the UI thread. The
+ * disk level is bounded by the size of its files, which are evicted in least-recently-used order, and must only be
+ * accessed from background threads.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @see RemoteImageView#getImageCache()
+ * @since 0.0.1
+ */
+public class ImageCache
+{
+        private static final int JPEG_QUALITY = 90;
+        private static final String TEMPORARY_SUFFIX = ".tmp";
+
+        private final DiskCache mDiskCache;
+        private final MemoryCache mMemoryCache;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Bitmaps in least-recently-used order, bounded by the amount of bytes of their pixels.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class MemoryCache
+        {
+                private final LinkedHashMap < String, Bitmap > mBitmaps;
+                private final int mMaxBytes;
+                private int mSize;
+
+                public MemoryCache ( int maxBytes )
+                {
+                        mBitmaps = new LinkedHashMap < String, Bitmap > ( 16, 0.75f, true );
+                        mMaxBytes = maxBytes;
+                }
+
+                public synchronized void clear ()
+                {
+                        mBitmaps.clear ();
+
+                        mSize = 0;
+                }
+
+                public synchronized Bitmap get ( String key )
+                {
+                        return mBitmaps.get ( key );
+                }
+
+                public synchronized void put ( String key, Bitmap bitmap )
+                {
+                        Iterator < Map.Entry < String, Bitmap > > iterator;
+                        Bitmap previous;
+                        int bytes;
+
+                        bytes = sizeOf ( bitmap );
+
+                        if ( bytes > mMaxBytes )
+                        {
+                                // Would evict everything else
+                                return;
+                        }
+
+                        previous = mBitmaps.put ( key, bitmap );
+
+                        if ( previous != null )
+                        {
+                                mSize -= sizeOf ( previous );
+                        }
+
+                        mSize += bytes;
+
+                        iterator = mBitmaps.entrySet ().iterator ();
+
+                        while ( mSize > mMaxBytes && iterator.hasNext () )
+                        {
+                                mSize -= sizeOf ( iterator.next ().getValue () );
+
+                                iterator.remove ();
+                        }
+                }
+
+                private static int sizeOf ( Bitmap bitmap )
+                {
+                        return bitmap.getRowBytes () * bitmap.getHeight ();
+                }
+        }
+
+        /**
+         * Encoded pictures in a directory, bounded by the size of the files. The file modification time records the
+         * last access.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class DiskCache
+        {
+                private final File mDirectory;
+                private boolean mInitialized;
+                private final long mMaxBytes;
+                private long mSize;
+
+                public DiskCache ( File directory, long maxBytes )
+                {
+                        mDirectory = directory;
+                        mMaxBytes = maxBytes;
+                }
+
+                public Bitmap get ( String key, BitmapDecoder decoder )
+                {
+                        Bitmap bitmap;
+                        File file;
+
+                        file = fileFor ( key );
+
+                        if ( !file.exists () )
+                        {
+                                return null;
+                        }
+
+                        bitmap = decode ( file, decoder );
+
+                        synchronized ( this )
+                        {
+                                initialize ();
+
+                                if ( bitmap == null )
+                                {
+                                        // Corrupted
+                                        delete ( file );
+                                }
+                                else
+                                {
+                                        file.setLastModified ( System.currentTimeMillis () );
+                                }
+                        }
+
+                        return bitmap;
+                }
+
+                public void put ( String key, Bitmap bitmap ) throws IOException
+                {
+                        File file;
+                        OutputStream out;
+                        File temporary;
+                        boolean written;
+
+                        file = fileFor ( key );
+
+                        synchronized ( this )
+                        {
+                                initialize ();
+                        }
+
+                        temporary = new File ( mDirectory, file.getName () + Thread.currentThread ().getId ()
+                                        + TEMPORARY_SUFFIX );
+                        out = new FileOutputStream ( temporary );
+
+                        try
+                        {
+                                written = bitmap.compress ( bitmap.hasAlpha () ? CompressFormat.PNG : CompressFormat.JPEG,
+                                                JPEG_QUALITY, out );
+                        }
+                        finally
+                        {
+                                out.close ();
+                        }
+
+                        synchronized ( this )
+                        {
+                                if ( !written )
+                                {
+                                        temporary.delete ();
+
+                                        return;
+                                }
+
+                                delete ( file );
+
+                                if ( !temporary.renameTo ( file ) )
+                                {
+                                        temporary.delete ();
+
+                                        throw new IOException ( "Cannot write " + file );
+                                }
+
+                                mSize += file.length ();
+
+                                trim ();
+                        }
+                }
+
+                private static Bitmap decode ( File file, BitmapDecoder decoder )
+                {
+                        InputStream in;
+
+                        if ( decoder == null )
+                        {
+                                return BitmapFactory.decodeFile ( file.getPath () );
+                        }
+
+                        try
+                        {
+                                in = new FileInputStream ( file );
+
+                                try
+                                {
+                                        return decoder.decode ( in );
+                                }
+                                finally
+                                {
+                                        in.close ();
+                                }
+                        }
+                        catch ( IOException ex )
+                        {
+                                // Unreadable, dealt with as corrupted
+                                return null;
+                        }
+                }
+
+                /**
+                 * Deletes a file, keeping track of the size of the cache. Must be called while holding the lock.
+                 * 
+                 * @param file
+                 */
+                private void delete ( File file )
+                {
+                        long length;
+
+                        length = file.length ();
+
+                        if ( file.delete () )
+                        {
+                                mSize -= length;
+                        }
+                }
+
+                private File fileFor ( String key )
+                {
+                        MessageDigest digest;
+                        StringBuilder name;
+
+                        try
+                        {
+                                digest = MessageDigest.getInstance ( "MD5" );
+                        }
+                        catch ( NoSuchAlgorithmException ex )
+                        {
+                                throw new IllegalStateException ( ex );
+                        }
+
+                        name = new StringBuilder ();
+
+                        for ( byte b : digest.digest ( key.getBytes () ) )
+                        {
+                                name.append ( Character.forDigit ( ( b >> 4 ) & 0xF, 16 ) );
+                                name.append ( Character.forDigit ( b & 0xF, 16 ) );
+                        }
+
+                        return new File ( mDirectory, name.toString () );
+                }
+
+                /**
+                 * Creates the directory and measures its content on first write. Must be called while holding the
+                 * lock.
+                 */
+                private void initialize ()
+                {
+                        File[] files;
+
+                        if ( mInitialized )
+                        {
+                                return;
+                        }
+
+                        mDirectory.mkdirs ();
+
+                        files = mDirectory.listFiles ();
+
+                        if ( files != null )
+                        {
+                                for ( File file : files )
+                                {
+                                        if ( file.getName ().endsWith ( TEMPORARY_SUFFIX ) )
+                                        {
+                                                // Left over by a crash
+                                                file.delete ();
+                                        }
+                                        else
+                                        {
+                                                mSize += file.length ();
+                                        }
+                                }
+                        }
+
+                        mInitialized = true;
+                }
+
+                /**
+                 * Deletes least recently used files until the cache fits its bounds. Must be called while holding the
+                 * lock.
+                 */
+                private void trim ()
+                {
+                        File[] files;
+
+                        if ( mSize <= mMaxBytes )
+                        {
+                                return;
+                        }
+
+                        files = mDirectory.listFiles ();
+
+                        if ( files == null )
+                        {
+                                return;
+                        }
+
+                        Arrays.sort ( files, new Comparator < File > ()
+                        {
+                                @Override
+                                public int compare ( File first, File second )
+                                {
+                                        long a;
+                                        long b;
+
+                                        a = first.lastModified ();
+                                        b = second.lastModified ();
+
+                                        return a < b ? -1 : ( a > b ? 1 : 0 );
+                                }
+                        } );
+
+                        for ( File file : files )
+                        {
+                                if ( mSize <= mMaxBytes )
+                                {
+                                        break;
+                                }
+
+                                if ( !file.getName ().endsWith ( TEMPORARY_SUFFIX ) )
+                                {
+                                        delete ( file );
+                                }
+                        }
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param memoryBytes Maximum amount of bytes held by bitmaps in memory.
+         * @param directory Directory of the disk level, or <code>null</code> to keep pictures in memory only.
+         * @param diskBytes Maximum size of the files in the disk level.
+         * @since 0.0.1
+         */
+        public ImageCache ( int memoryBytes, File directory, long diskBytes )
+        {
+                mDiskCache = directory != null ? new DiskCache ( directory, diskBytes ) : null;
+                mMemoryCache = new MemoryCache ( memoryBytes );
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Releases all bitmaps held in memory, for example when the system is low on memory. The disk level is kept.
+         * 
+         * @since 0.0.1
+         */
+        public void clearMemory ()
+        {
+                mMemoryCache.clear ();
+        }
+
+        /**
+         * Looks a picture up in memory, then on disk. Disk hits are promoted to memory. Must not be called in the UI
+         * thread.
+         * 
+         * @param key Cache key, usually the URI of the picture.
+         * @return The picture, or <code>null</code> if not cached.
+         * @since 0.0.1
+         */
+        public Bitmap get ( String key )
+        {
+                return get ( key, null );
+        }
+
+        /**
+         * Looks a picture up in memory, then on disk. Disk hits are decoded with the given decoder, so that they get
+         * the same pixel configuration as pictures just downloaded, and promoted to memory. Must not be called in the
+         * UI thread.
+         * 
+         * @param key Cache key, usually the URI of the picture.
+         * @param decoder Decodes pictures found on disk, <code>null</code> to decode them with default options.
+         * @return The picture, or <code>null</code> if not cached.
+         * @since 0.0.1
+         */
+        public Bitmap get ( String key, BitmapDecoder decoder )
+        {
+                Bitmap bitmap;
+
+                bitmap = mMemoryCache.get ( key );
+
+                if ( bitmap == null && mDiskCache != null )
+                {
+                        bitmap = mDiskCache.get ( key, decoder );
+
+                        if ( bitmap != null )
+                        {
+                                mMemoryCache.put ( key, bitmap );
+                        }
+                }
+
+                return bitmap;
+        }
+
+        /**
+         * Looks a picture up in memory only. Cheap enough for the UI thread.
+         * 
+         * @param key Cache key, usually the URI of the picture.
+         * @return The picture, or <code>null</code> if not in memory.
+         * @since 0.0.1
+         */
+        public Bitmap getFromMemory ( String key )
+        {
+                return mMemoryCache.get ( key );
+        }
+
+        /**
+         * Stores a picture in both levels. Must not be called in the UI thread.
+         * 
+         * @param key Cache key, usually the URI of the picture.
+         * @param bitmap The picture.
+         * @throws IOException If the picture could not be written to disk, it is still cached in memory.
+         * @since 0.0.1
+         */
+        public void put ( String key, Bitmap bitmap ) throws IOException
+        {
+                mMemoryCache.put ( key, bitmap );
+
+                if ( mDiskCache != null )
+                {
+                        mDiskCache.put ( key, bitmap );
+                }
+        }
+}
@@ -0,0 +1,240 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.widget;
+
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.widget.AbsListView;
+import android.widget.ListView;
+
+import co.bitcode.android.os.AsyncTask;
+
+/**
+ * Loads the pictures of the rows about to be scrolled into view, so that they are already cached when the rows are
+ * bound.
+ * <p>
+ * Set as the {@link AbsListView.OnScrollListener} of the list, or forward its callbacks. While the list scrolls, the
+ * pictures of the next rows in the scrolling direction are loaded through {@link RemoteImageView#prefetch(Uri)} with
+ * low priority. Prefetches still in flight are cancelled when the scrolling direction changes.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @param <T> Type of the items of the adapter.
+ * @since 0.0.1
+ */
+public abstract class ImagePrefetcher < T > implements AbsListView.OnScrollListener
+{
+        private static final int DOWN = 1;
+        private static final int NONE = 0;
+        private static final int UP = -1;
+
+        private final CustomViewArrayAdapter < T > mAdapter;
+        private int mDirection;
+        private final int mDistance;
+        private int mFirstVisible;
+        private final RemoteImageView mLoader;
+        private final LinkedList < AsyncTask < Uri, Bitmap > > mPending;
+        private int mRangeEnd;
+        private int mRangeStart;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Constructors
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * @param adapter The adapter of the list.
+         * @param loader A view configured like the ones showing the pictures in the rows, such as one of them, whose
+         *                size and pixel configuration are used to decode the pictures. It's never modified.
+         * @param distance How many rows past the visible ones are prefetched.
+         * @since 0.0.1
+         */
+        public ImagePrefetcher ( CustomViewArrayAdapter < T > adapter, RemoteImageView loader, int distance )
+        {
+                mAdapter = adapter;
+                mLoader = loader;
+                mDistance = distance;
+
+                mPending = new LinkedList < AsyncTask < Uri, Bitmap > > ();
+
+                mFirstVisible = -1;
+
+                reset ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Public Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Cancels the prefetches in flight, for example when the content of the list is replaced.
+         * 
+         * @since 0.0.1
+         */
+        public void cancel ()
+        {
+                for ( AsyncTask < Uri, Bitmap > task : mPending )
+                {
+                        task.cancel ( true );
+                }
+
+                mPending.clear ();
+
+                reset ();
+        }
+
+        @Override
+        public void onScroll ( AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount )
+        {
+                int direction;
+                int first;
+
+                if ( visibleItemCount == 0 )
+                {
+                        return;
+                }
+
+                if ( mFirstVisible < 0 || firstVisibleItem == mFirstVisible )
+                {
+                        // Not scrolling yet, the next rows are the most likely to be needed
+                        direction = mDirection != NONE ? mDirection : DOWN;
+                }
+                else
+                {
+                        direction = firstVisibleItem > mFirstVisible ? DOWN : UP;
+                }
+
+                mFirstVisible = firstVisibleItem;
+
+                if ( direction != mDirection )
+                {
+                        cancel ();
+
+                        mDirection = direction;
+                }
+
+                first = firstVisibleItem;
+
+                if ( view instanceof ListView )
+                {
+                        // Positions of the list include its headers
+                        first -= ( ( ListView ) view ).getHeaderViewsCount ();
+                }
+
+                if ( direction == DOWN )
+                {
+                        prefetch ( first + visibleItemCount, first + visibleItemCount + mDistance );
+                }
+                else
+                {
+                        prefetch ( first - mDistance, first );
+                }
+        }
+
+        @Override
+        public void onScrollStateChanged ( AbsListView view, int scrollState )
+        {
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Protected Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Gets the picture shown by the row of an item.
+         * 
+         * @param item An item of the adapter.
+         * @return Uri of the picture, or <code>null</code> if the row shows no picture.
+         * @since 0.0.1
+         */
+        protected abstract Uri getImageUri ( T item );
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Prefetches the pictures of the rows in a range of adapter positions, skipping the ones already prefetched
+         * while scrolling in the current direction.
+         */
+        private void prefetch ( int start, int end )
+        {
+                int count;
+                int from;
+                int to;
+
+                count = mAdapter.getCount ();
+
+                start = Math.max ( 0, start );
+                end = Math.min ( count, end );
+
+                if ( mDirection == DOWN )
+                {
+                        from = Math.max ( start, mRangeEnd );
+                        to = end;
+
+                        // Pictures are loaded last-in first-out, submit the farthest row first
+                        for ( int i = to - 1; i >= from; i-- )
+                        {
+                                prefetch ( mAdapter.getItem ( i ) );
+                        }
+
+                        mRangeEnd = Math.max ( mRangeEnd, end );
+                }
+                else
+                {
+                        from = start;
+                        to = Math.min ( end, mRangeStart );
+
+                        for ( int i = from; i < to; i++ )
+                        {
+                                prefetch ( mAdapter.getItem ( i ) );
+                        }
+
+                        mRangeStart = Math.min ( mRangeStart, start );
+                }
+        }
+
+        private void prefetch ( T item )
+        {
+                AsyncTask < Uri, Bitmap > task;
+
+                task = mLoader.prefetch ( getImageUri ( item ) );
+
+                if ( task == null )
+                {
+                        return;
+                }
+
+                mPending.addLast ( task );
+
+                while ( mPending.size () > mDistance * 2 )
+                {
+                        // Left behind by the scrolling, not worth loading anymore if still pending
+                        mPending.removeFirst ().cancel ( true );
+                }
+        }
+
+        private void reset ()
+        {
+                mDirection = NONE;
+                mRangeEnd = Integer.MIN_VALUE;
+                mRangeStart = Integer.MAX_VALUE;
+        }
+}
@@ -0,0 +1,100 @@
+/*
+ * Android Utilities
+ * Copyright (C) 2010-2011  Lorenzo Villani
+ *
+ * This library is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, version 3 of the License.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.bitcode.android.widget;
+
+import java.util.List;
+
+import android.widget.ArrayAdapter;
+
+import co.bitcode.android.os.StreamingTask;
+
+/**
+ * A {@link StreamingTask} which fills the adapter of a {@link ProgressListView} while loading.
+ * <p>
+ * The progress indicator is shown when the task starts and hidden as soon as the first items are available, so the
+ * user can look at the first rows while the rest are still loading. Subclasses implement
+ * {@link #doInBackground(Object...)} and call {@link #publishPartialResult(Object)} for every loaded item.
+ * </p>
+ * 
+ * @author Lorenzo Villani
+ * @param <Params> The type of the parameters passed to this computation.
+ * @param <Item> The type of the list items.
+ * @since 0.0.1
+ */
+public abstract class ProgressListTask < Params, Item > extends StreamingTask < Params, Item, Void >
+{
+        private ArrayAdapter < Item > mAdapter;
+        private ProgressListView mProgressListView;
+
+        /**
+         * @param progressListView The view showing the list.
+         * @param adapter The adapter of the list, cleared when the task starts.
+         * @since 0.0.1
+         */
+        public ProgressListTask ( ProgressListView progressListView, ArrayAdapter < Item > adapter )
+        {
+                super ();
+
+                mAdapter = adapter;
+                mProgressListView = progressListView;
+        }
+
+        /**
+         * Clears the adapter and shows the progress indicator.
+         */
+        @Override
+        protected void onStart ()
+        {
+                super.onStart ();
+
+                mAdapter.clear ();
+
+                mProgressListView.showIndicator ();
+        }
+
+        /**
+         * Appends a batch of items, notifying the list only once, and hides the progress indicator.
+         */
+        @Override
+        protected void onPartialResult ( List < Item > items )
+        {
+                super.onPartialResult ( items );
+
+                mAdapter.setNotifyOnChange ( false );
+
+                for ( Item item : items )
+                {
+                        mAdapter.add ( item );
+                }
+
+                mAdapter.notifyDataSetChanged ();
+
+                mProgressListView.hideIndicator ();
+        }
+
+        /**
+         * Hides the progress indicator, the empty view is shown if nothing was loaded.
+         */
+        @Override
+        protected void onFinalize ()
+        {
+                super.onFinalize ();
+
+                mProgressListView.hideIndicator ();
+        }
+}
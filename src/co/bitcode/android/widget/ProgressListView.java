@@ -29,6 +29,7 @@ import co.bitcode.android.R;
 /**
  * A {@link ListView} which shows a progress bar while loading data.
  * 
+ * @see ProgressListTask
  * @since 0.0.1
  * @author Lorenzo Villani
  */
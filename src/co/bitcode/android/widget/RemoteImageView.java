@@ -16,13 +16,26 @@
 
 package co.bitcode.android.widget;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.support.v4.app.FragmentActivity;
 import android.util.AttributeSet;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import co.bitcode.android.app.TaskScopeFragment;
 import co.bitcode.android.os.AsyncTask;
+import co.bitcode.android.os.PriorityExecutor;
+import co.bitcode.android.os.PriorityExecutor.Order;
+import co.bitcode.android.os.PriorityExecutor.OverflowPolicy;
+import co.bitcode.android.os.TaskPriority;
+import co.bitcode.android.os.TaskScope;
 
 /**
  * An {@link ImageView} which downloads a picture from the network and displays it when done.
@@ -42,6 +55,190 @@ public abstract class RemoteImageView extends RoundedCornerImageView
          */
         protected static final int NO_PICTURE = -1;
 
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Constants
+        // -------------------------------------------------------------------------------------------------------------
+
+        private static final long DISK_CACHE_BYTES = 16 * 1024 * 1024;
+        private static final int MAX_PENDING_LOADS = 32;
+
+        /**
+         * Share of the heap available to decoded pictures.
+         */
+        private static final int MEMORY_CACHE_DIVISOR = 8;
+
+        /**
+         * Loads the most recently requested pictures first, which are the ones on screen while flinging a list. Older
+         * requests are dropped once too many of them pile up, views still waiting for them request them again.
+         */
+        private static final PriorityExecutor EXECUTOR;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Fields
+        // -------------------------------------------------------------------------------------------------------------
+
+        private static ImageCache sImageCache;
+
+        private Bitmap.Config mBitmapConfig;
+        private boolean mExactScaling;
+        private boolean mReloadOnAttach;
+        private AsyncTask < Uri, Bitmap > mTask;
+        private Uri mUri;
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Types
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Loads a picture for a view. Only holds a weak reference to the view, so that loads waiting in the queue or
+         * shared with other views do not keep a discarded view, and its Activity, alive.
+         * 
+         * @author Lorenzo Villani
+         */
+        private static final class LoadTask extends AsyncTask < Uri, Bitmap >
+        {
+                private final ImageCache mCache;
+                private final BitmapDecoder mDecoder;
+                private final String mKey;
+                private final WeakReference < RemoteImageView > mView;
+
+                public LoadTask ( RemoteImageView view, ImageCache cache, String key, BitmapDecoder decoder )
+                {
+                        super ();
+
+                        mView = new WeakReference < RemoteImageView > ( view );
+                        mCache = cache;
+                        mKey = key;
+                        mDecoder = decoder;
+                }
+
+                @Override
+                protected void onStart ()
+                {
+                        super.onStart ();
+
+                        RemoteImageView view;
+                        int loadingDrawable;
+
+                        view = mView.get ();
+
+                        if ( view == null || view.mTask != this )
+                        {
+                                return;
+                        }
+
+                        loadingDrawable = view.getLoadingDrawable ();
+
+                        if ( loadingDrawable != NO_PICTURE )
+                        {
+                                view.setImageResource ( loadingDrawable );
+                        }
+                }
+
+                @Override
+                protected Bitmap doInBackground ( Uri ... params ) throws Exception
+                {
+                        RemoteImageView view;
+
+                        if ( params == null || params[0] == null )
+                        {
+                                return null;
+                        }
+
+                        view = mView.get ();
+
+                        if ( view == null )
+                        {
+                                // Discarded along with its Activity, whose scope has cancelled the load as well
+                                return null;
+                        }
+
+                        return view.load ( params[0], mCache, mKey, mDecoder );
+                }
+
+                @Override
+                protected void onFinish ( Bitmap result )
+                {
+                        super.onFinish ( result );
+
+                        RemoteImageView view;
+                        int missingDrawable;
+
+                        view = mView.get ();
+
+                        if ( view == null || view.mTask != this )
+                        {
+                                // Stale, the view is gone or now shows another picture
+                                return;
+                        }
+
+                        if ( result != null )
+                        {
+                                view.setImageBitmap ( result );
+                        }
+                        else
+                        {
+                                missingDrawable = view.getMissingDrawable ();
+
+                                if ( missingDrawable != NO_PICTURE )
+                                {
+                                        view.setImageResource ( missingDrawable );
+                                }
+                        }
+                }
+
+                @Override
+                protected void onCancelled ()
+                {
+                        super.onCancelled ();
+
+                        TaskScope scope;
+                        RemoteImageView view;
+
+                        scope = getScope ();
+                        view = mView.get ();
+
+                        if ( view == null || view.mTask != this )
+                        {
+                                // Cancelled by the view, which does not want the picture anymore
+                                return;
+                        }
+
+                        view.mTask = null;
+
+                        if ( scope == null || !scope.isClosed () )
+                        {
+                                // Dropped by the executor while the view still waits for the picture
+                                view.setImageURI ( view.mUri );
+                        }
+                }
+
+                @Override
+                protected void onFinalize ()
+                {
+                        super.onFinalize ();
+
+                        RemoteImageView view;
+
+                        view = mView.get ();
+
+                        if ( view != null && view.mTask == this )
+                        {
+                                view.mTask = null;
+                        }
+                }
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Static Initialization
+        // -------------------------------------------------------------------------------------------------------------
+
+        static
+        {
+                EXECUTOR = new PriorityExecutor ( "RemoteImageView", PriorityExecutor.DEFAULT_POOL_SIZE, Order.LIFO );
+                EXECUTOR.setCapacity ( MAX_PENDING_LOADS, OverflowPolicy.DROP_OLDEST );
+        }
+
         // -------------------------------------------------------------------------------------------------------------
         // Public Constructors
         // -------------------------------------------------------------------------------------------------------------
@@ -80,67 +277,152 @@ public abstract class RemoteImageView extends RoundedCornerImageView
         // Public Methods
         // -------------------------------------------------------------------------------------------------------------
 
+        /**
+         * @return Pixel configuration of downloaded pictures, <code>null</code> if chosen by the decoder.
+         * @since 0.0.1
+         */
+        public Bitmap.Config getBitmapConfig ()
+        {
+                return mBitmapConfig;
+        }
+
+        /**
+         * @return Whether downloaded pictures are scaled down to the exact size of this view.
+         * @since 0.0.1
+         */
+        public boolean isExactScaling ()
+        {
+                return mExactScaling;
+        }
+
+        /**
+         * Loads a picture into the cache in background, as if it were going to be shown by this view, without
+         * changing what this view shows. Used to load pictures of list rows before they are scrolled into view.
+         * <p>
+         * The load runs with {@link TaskPriority#PREFETCH} priority, after the pictures of visible rows. A view which
+         * requests the same picture while it is being prefetched shares the prefetch, which is moved up to visible
+         * priority if it has not started yet.
+         * </p>
+         * 
+         * @param uri Uri of the picture.
+         * @return The prefetching task, which can be cancelled, or <code>null</code> if there's nothing to prefetch.
+         * @see ImagePrefetcher
+         * @since 0.0.1
+         */
+        public AsyncTask < Uri, Bitmap > prefetch ( Uri uri )
+        {
+                ImageCache cache;
+                BitmapDecoder decoder;
+                String key;
+                AsyncTask < Uri, Bitmap > task;
+
+                cache = getImageCache ();
+
+                if ( uri == null || cache == null )
+                {
+                        return null;
+                }
+
+                decoder = newDecoder ();
+                key = getCacheKey ( uri, decoder );
+
+                if ( cache.getFromMemory ( key ) != null )
+                {
+                        return null;
+                }
+
+                task = new LoadTask ( this, cache, key, decoder );
+                task.setPriority ( TaskPriority.PREFETCH );
+
+                configure ( task, key );
+
+                task.execute ( uri );
+
+                return task;
+        }
+
+        /**
+         * Sets the pixel configuration of downloaded pictures. {@link Bitmap.Config#RGB_565} halves the memory taken by
+         * opaque pictures, such as photos, at the cost of some banding.
+         * 
+         * @param config A {@link Bitmap.Config}, <code>null</code> to let the decoder choose.
+         * @since 0.0.1
+         */
+        public void setBitmapConfig ( Bitmap.Config config )
+        {
+                mBitmapConfig = config;
+        }
+
+        /**
+         * Pictures are decoded subsampled by a power of two, which can leave them up to twice as large as this view.
+         * Exact scaling further scales them down to its size, trading decoding time for memory.
+         * 
+         * @param exactScaling Whether downloaded pictures are scaled down to the exact size of this view.
+         * @since 0.0.1
+         */
+        public void setExactScaling ( boolean exactScaling )
+        {
+                mExactScaling = exactScaling;
+        }
+
         /**
          * Triggers an asynchronous image download.
+         * <p>
+         * Only the last requested picture is shown: a load still in flight for a different URI, typically because a
+         * list row has been recycled, is cancelled and its result is ignored.
+         * </p>
+         * <p>
+         * Pictures are decoded to the size of this view, as measured by the last layout pass or set by its layout
+         * parameters, and cached separately for each size. Views requesting the same picture at the same size while it
+         * is being loaded wait for that load instead of starting their own.
+         * </p>
          * 
-         * @see #fetchRemoteImage(Uri)
+         * @see #fetchRemoteImage(Uri, BitmapDecoder)
          * @since 0.0.1
          */
         @Override
         public void setImageURI ( Uri uri )
         {
-                new AsyncTask < Uri, Bitmap > ()
+                ImageCache cache;
+                BitmapDecoder decoder;
+                String key;
+                Bitmap cached;
+                AsyncTask < Uri, Bitmap > task;
+
+                if ( mTask != null && uri != null && uri.equals ( mUri ) )
                 {
-                        @Override
-                        protected void onStart ()
-                        {
-                                super.onStart ();
+                        // Rebound to the picture being loaded
+                        return;
+                }
 
-                                int loadingDrawable;
+                cancelLoad ();
 
-                                loadingDrawable = getLoadingDrawable ();
+                mUri = uri;
 
-                                if ( loadingDrawable != NO_PICTURE )
-                                {
-                                        setImageResource ( loadingDrawable );
-                                }
-                        }
+                cache = getImageCache ();
+                decoder = newDecoder ();
+                key = uri != null ? getCacheKey ( uri, decoder ) : null;
 
-                        @Override
-                        protected Bitmap doInBackground ( Uri ... params ) throws Exception
+                if ( cache != null && key != null )
+                {
+                        cached = cache.getFromMemory ( key );
+
+                        if ( cached != null )
                         {
-                                if ( params != null )
-                                {
-                                        return fetchRemoteImage ( params[0] );
-                                }
-                                else
-                                {
-                                        return null;
-                                }
+                                // No loading drawable flash for pictures already decoded
+                                setImageBitmap ( cached );
+
+                                return;
                         }
+                }
 
-                        @Override
-                        protected void onFinish ( Bitmap result )
-                        {
-                                super.onFinish ( result );
+                task = new LoadTask ( this, cache, key, decoder );
 
-                                if ( result != null )
-                                {
-                                        setImageBitmap ( result );
-                                }
-                                else
-                                {
-                                        int missingDrawable;
+                configure ( task, key );
 
-                                        missingDrawable = getMissingDrawable ();
+                mTask = task;
 
-                                        if ( missingDrawable != NO_PICTURE )
-                                        {
-                                                setImageResource ( missingDrawable );
-                                        }
-                                }
-                        }
-                }.execute ( uri );
+                task.execute ( uri );
         }
 
         // -------------------------------------------------------------------------------------------------------------
@@ -153,12 +435,72 @@ public abstract class RemoteImageView extends RoundedCornerImageView
          * Execution of this method is already wrapped inside an {@link AsyncTask} which means that computation doesn't
          * happen inside the UI thread.
          * </p>
+         * <p>
+         * The default implementation returns <code>null</code>, subclasses override either this method or
+         * {@link #fetchRemoteImage(Uri, BitmapDecoder)}.
+         * </p>
          * 
          * @param uri Uri of the image to download.
          * @return A {@link Bitmap} containing the downloaded resource.
          * @since 0.0.1
          */
-        protected abstract Bitmap fetchRemoteImage ( Uri uri );
+        protected Bitmap fetchRemoteImage ( Uri uri )
+        {
+                return null;
+        }
+
+        /**
+         * This method is invoked when there's a need to download a picture from the network, with a decoder sized for
+         * this view.
+         * <p>
+         * The default implementation scales down the result of {@link #fetchRemoteImage(Uri)}, which still needs the
+         * full picture in memory at first, and converts it to the configuration set by
+         * {@link #setBitmapConfig(Bitmap.Config)}. The full picture is left to its owner, it is not recycled. Override
+         * this method instead to pass the downloaded stream to {@link BitmapDecoder#decode(java.io.InputStream)}, so
+         * that the full picture is never decoded.
+         * </p>
+         * 
+         * @param uri Uri of the image to download.
+         * @param decoder Decodes pictures no larger than this view.
+         * @return A {@link Bitmap} containing the downloaded resource.
+         * @since 0.0.1
+         */
+        protected Bitmap fetchRemoteImage ( Uri uri, BitmapDecoder decoder )
+        {
+                return decoder.scale ( fetchRemoteImage ( uri ) );
+        }
+
+        /**
+         * Gets the cache consulted before {@link #fetchRemoteImage(Uri)}. Pictures in memory are shown right away, the
+         * others are looked up on disk in background before being downloaded.
+         * <p>
+         * By default all instances share a cache using an eighth of the heap and 16 MiB of disk space in the cache
+         * directory of the application. Override to use a different cache, or to return <code>null</code> if pictures
+         * must not be cached.
+         * </p>
+         * 
+         * @return An {@link ImageCache}, or <code>null</code>.
+         * @since 0.0.1
+         */
+        protected ImageCache getImageCache ()
+        {
+                File directory;
+                long memoryBytes;
+
+                synchronized ( RemoteImageView.class )
+                {
+                        if ( sImageCache == null )
+                        {
+                                directory = new File ( getContext ().getCacheDir (), "RemoteImageView" );
+                                memoryBytes = Runtime.getRuntime ().maxMemory () / MEMORY_CACHE_DIVISOR;
+
+                                sImageCache = new ImageCache ( ( int ) Math.min ( Integer.MAX_VALUE, memoryBytes ),
+                                                directory, DISK_CACHE_BYTES );
+                        }
+
+                        return sImageCache;
+                }
+        }
 
         /**
          * This method is invoked when this {@link ImageView} is downloading a picture from the network.
@@ -175,4 +517,165 @@ public abstract class RemoteImageView extends RoundedCornerImageView
          * @return Drawable ID.
          */
         protected abstract int getMissingDrawable ();
+
+        /**
+         * Resumes a load interrupted by {@link #onDetachedFromWindow()}.
+         */
+        @Override
+        protected void onAttachedToWindow ()
+        {
+                super.onAttachedToWindow ();
+
+                if ( mReloadOnAttach )
+                {
+                        mReloadOnAttach = false;
+
+                        setImageURI ( mUri );
+                }
+        }
+
+        /**
+         * Cancels the load in flight, nobody is going to see it.
+         */
+        @Override
+        protected void onDetachedFromWindow ()
+        {
+                super.onDetachedFromWindow ();
+
+                mReloadOnAttach = cancelLoad ();
+        }
+
+        // -------------------------------------------------------------------------------------------------------------
+        // Private Methods
+        // -------------------------------------------------------------------------------------------------------------
+
+        /**
+         * Cancels the load in flight, if any.
+         * 
+         * @return <code>true</code> if a load has been cancelled.
+         */
+        private boolean cancelLoad ()
+        {
+                AsyncTask < Uri, Bitmap > task;
+
+                task = mTask;
+
+                if ( task == null )
+                {
+                        return false;
+                }
+
+                mTask = null;
+
+                task.cancel ( true );
+
+                return true;
+        }
+
+        /**
+         * Binds a load to the lifetime of the hosting activity and lets it share a load in flight for the same picture.
+         */
+        private void configure ( AsyncTask < Uri, Bitmap > task, String key )
+        {
+                if ( getContext () instanceof FragmentActivity )
+                {
+                        // Do not keep a destroyed Activity alive through this View
+                        task.setScope ( TaskScopeFragment.of ( ( FragmentActivity ) getContext () ) );
+                }
+
+                if ( key != null )
+                {
+                        // Rows showing the same picture at the same size share a single download, prefetched or not
+                        task.setCoalescingKey ( Arrays.asList ( RemoteImageView.class, key ) );
+                }
+
+                task.setExecutor ( EXECUTOR );
+        }
+
+        /**
+         * Pictures decoded for different sizes or pixel configurations are cached separately.
+         */
+        private static String getCacheKey ( Uri uri, BitmapDecoder decoder )
+        {
+                StringBuilder key;
+
+                key = new StringBuilder ( uri.toString () );
+
+                if ( decoder.getWidth () > 0 || decoder.getHeight () > 0 )
+                {
+                        key.append ( '#' ).append ( decoder.getWidth () );
+                        key.append ( 'x' ).append ( decoder.getHeight () );
+
+                        if ( decoder.isExactScaling () )
+                        {
+                                key.append ( '!' );
+                        }
+                }
+
+                if ( decoder.getConfig () != null )
+                {
+                        key.append ( '#' ).append ( decoder.getConfig ().name () );
+                }
+
+                return key.toString ();
+        }
+
+        /**
+         * Looks a picture up in the cache, downloading it if missing. Invoked in background.
+         */
+        private Bitmap load ( Uri uri, ImageCache cache, String key, BitmapDecoder decoder )
+        {
+                Bitmap bitmap;
+
+                bitmap = cache != null ? cache.get ( key, decoder ) : null;
+
+                if ( bitmap == null )
+                {
+                        bitmap = fetchRemoteImage ( uri, decoder );
+
+                        if ( bitmap != null && cache != null )
+                        {
+                                try
+                                {
+                                        cache.put ( key, bitmap );
+                                }
+                                catch ( IOException ex )
+                                {
+                                        // Still cached in memory, the disk may be full
+                                }
+                        }
+                }
+
+                return bitmap;
+        }
+
+        /**
+         * Creates a decoder sized for the content area of this view. Dimensions still unknown, because the view hasn't
+         * been laid out and doesn't have an exact size in its layout parameters, are left unbounded.
+         */
+        private BitmapDecoder newDecoder ()
+        {
+                ViewGroup.LayoutParams params;
+                int height;
+                int width;
+
+                params = getLayoutParams ();
+                width = getWidth ();
+                height = getHeight ();
+
+                if ( width <= 0 && params != null && params.width > 0 )
+                {
+                        width = params.width;
+                }
+
+                if ( height <= 0 && params != null && params.height > 0 )
+                {
+                        height = params.height;
+                }
+
+                width = Math.max ( 0, width - getPaddingLeft () - getPaddingRight () );
+                height = Math.max ( 0, height - getPaddingTop () - getPaddingBottom () );
+
+                return new BitmapDecoder ( width, height, mBitmapConfig, mExactScaling );
+        }
 }